@@ -0,0 +1,185 @@
+/**
+ * @author Ondřej Doněk <ondrejd@gmail.com>
+ * @link https://github.com/ondrejd/webtools-trans-helper for the canonical source repository
+ * @license https://www.gnu.org/licenses/gpl-3.0.en.html GNU General Public License 3.0
+ */
+
+package com.ondrejd;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+
+/**
+ * Headless benchmarks of data source and filtering.
+ *
+ * Runs without JavaFX toolkit (only its collections are used). Every
+ * benchmark is warmed up first and then measured in several iterations,
+ * throughput and allocation rate (of the benchmark thread) are reported.
+ *
+ * Usage: <code>Benchmarks [size...]</code> (sizes are counts of strings,
+ * default 1000 10000 100000).
+ */
+public class Benchmarks {
+    private static final String[] FILES = {"Ethwork", "Intrace", "Qute", "WebTools"};
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int ITERATIONS = 5;
+    private static final long ITERATION_NANOS = 1000000000L;
+
+    private static volatile int sink;
+
+    /**
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) throws Exception {
+        List<Integer> sizes = new ArrayList<>();
+        for(String arg : args.length > 0 ? args : new String[] {"1000", "10000", "100000"}) {
+            for(String size : arg.split(",")) {
+                sizes.add(Integer.parseInt(size.trim()));
+            }
+        }
+
+        File dir = Files.createTempDirectory("webtools-bench").toFile();
+        System.out.println(String.format(Locale.ROOT, "%-18s %9s %12s %12s %12s %12s",
+                "benchmark", "size", "ms/op", "ops/s", "alloc MB/s", "alloc B/op"));
+
+        for(int size : sizes) {
+            run(dir, size);
+        }
+    }
+
+    /**
+     * Runs all benchmarks for given count of strings.
+     * @param dir Working directory.
+     * @param size
+     */
+    private static void run(File dir, int size) throws Exception {
+        // Input files - all strings in one file and the same count split into four
+        File single = new File(dir, "Single" + size + "/strings.xml");
+        new StringsXmlGenerator(size).generate(single, size);
+        ObservableList<TranslationString> data = FXCollections.<TranslationString>observableArrayList();
+        for(String name : FILES) {
+            File file = new File(dir, name + size + "/strings.xml");
+            new StringsXmlGenerator(name.hashCode() + size).generate(file, size / FILES.length);
+            data.addAll(XmlDataSource.loadXmlFile(file, null));
+        }
+        List<TranslationString> rows = XmlDataSource.loadXmlFile(single, null);
+        File output = new File(dir, "Output" + size + "/strings.xml");
+        output.getParentFile().mkdirs();
+
+        String file = data.get(data.size() / 2).getFile();
+        String name = data.get(data.size() / 2).getName();
+        TranslationIndex index = new TranslationIndex(data);
+        SearchIndex searchIndex = new SearchIndex(data);
+        LocaleAlignment alignment = new LocaleAlignment(data);
+
+        measure("loadXmlFile", size, () -> XmlDataSource.loadXmlFile(single, null).size());
+        measure("saveXmlFile", size, () -> XmlDataSource.saveXmlFile(output, rows) ? 1 : 0);
+        measure("filterFile.scan", size, () -> {
+            List<TranslationString> result = new ArrayList<>();
+            data.forEach(n -> {
+                if(file.equals(n.getFile())) {
+                    result.add(n);
+                }
+            });
+            return result.size();
+        });
+        measure("filterFile.index", size, () -> new ArrayList<>(index.getByFile(file)).size());
+        measure("filterName.scan", size, () -> {
+            List<TranslationString> result = new ArrayList<>();
+            data.forEach(n -> {
+                if(name.equals(n.getName())) {
+                    result.add(n);
+                }
+            });
+            return result.size();
+        });
+        measure("filterName.index", size, () -> new ArrayList<>(index.getByName(name)).size());
+        measure("search", size, () -> searchIndex.search("pripojeni serveru", 1000).size());
+        // Built over a copy so listeners do not pile up on data
+        measure("consistency", size, () -> {
+            return new ConsistencyIndex(FXCollections.observableArrayList(data), alignment).getInconsistentCount();
+        });
+        String[] sources = new String[data.size()];
+        String[] texts = new String[data.size()];
+        for(int i = 0; i < texts.length; i++) {
+            sources[i] = alignment.getSourceText(data.get(i));
+            texts[i] = data.get(i).getText();
+        }
+        measure("validation", size, () -> {
+            int invalid = 0;
+            for(String problem : TranslationValidator.check(sources, texts)) {
+                invalid += problem == null ? 0 : 1;
+            }
+            return invalid;
+        });
+        // Sorting by text - comparison by collator and by cached keys
+        Collator collator = Collator.getInstance(new Locale("cs", "CZ"));
+        measure("sort.collator", size, () -> {
+            List<TranslationString> result = new ArrayList<>(data);
+            result.sort((x, y) -> collator.compare(x.getText(), y.getText()));
+            return result.size();
+        });
+        RowSorter sorter = new RowSorter(data, new Locale("cs", "CZ"));
+        TranslationString[] snapshot = data.toArray(new TranslationString[data.size()]);
+        RowSorter.Column[] columns = {new RowSorter.Column(0, TranslationString::getText, false)};
+        String[][] values = {texts};
+        measure("sort.keys", size, () -> sorter.sort(snapshot, columns, values).size());
+        // Suggestions from memory of all rows (lookup includes hand-off to worker)
+        TranslationMemory memory = new TranslationMemory(new File(dir, "memory" + size + ".bin").toPath());
+        List<String[]> entries = new ArrayList<>(data.size());
+        for(int i = 0; i < texts.length; i++) {
+            TranslationString row = data.get(i);
+            entries.add(new String[] {sources[i] == null ? texts[i] : sources[i], texts[i], "", row.getFile(), row.getName()});
+        }
+        memory.addAll(entries);
+        String query = texts[texts.length / 3] + " znovu";
+        measure("memory.lookup", size, () -> memory.suggestNow(query, "", 5).size());
+        memory.close();
+    }
+
+    /**
+     * Measures benchmark and prints result.
+     * @param benchmark Name of benchmark.
+     * @param size
+     * @param op Operation (its result is consumed so it can't be optimized away).
+     */
+    private static void measure(String benchmark, int size, Callable<Integer> op) throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        long ops = 0;
+        long nanos = 0;
+        long allocated = 0;
+
+        for(int i = 0; i < WARMUP_ITERATIONS + ITERATIONS; i++) {
+            long iterationOps = 0;
+            long allocatedStart = threads.getThreadAllocatedBytes(thread);
+            long start = System.nanoTime();
+            long end;
+
+            do {
+                sink += op.call();
+                iterationOps++;
+                end = System.nanoTime();
+            } while(end - start < ITERATION_NANOS);
+
+            if(i >= WARMUP_ITERATIONS) {
+                ops += iterationOps;
+                nanos += end - start;
+                allocated += threads.getThreadAllocatedBytes(thread) - allocatedStart;
+            }
+        }
+
+        double seconds = nanos / 1e9;
+        System.out.println(String.format(Locale.ROOT, "%-18s %9d %12.4f %12.1f %12.1f %12d",
+                benchmark, size, seconds * 1000 / ops, ops / seconds,
+                allocated / seconds / (1024 * 1024), allocated / ops));
+    }
+}
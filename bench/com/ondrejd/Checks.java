@@ -0,0 +1,247 @@
+/**
+ * @author Ondřej Doněk <ondrejd@gmail.com>
+ * @link https://github.com/ondrejd/webtools-trans-helper for the canonical source repository
+ * @license https://www.gnu.org/licenses/gpl-3.0.en.html GNU General Public License 3.0
+ */
+
+package com.ondrejd;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+import javafx.beans.property.SimpleBooleanProperty;
+import javafx.beans.property.SimpleStringProperty;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+
+/**
+ * Headless checks of data source and data rows.
+ *
+ * Runs without JavaFX toolkit (same as {@link Benchmarks}). Every check
+ * prints its result, the first failed check ends the run with non-zero
+ * exit code.
+ *
+ * Usage: <code>Checks</code>
+ */
+public class Checks {
+    // Rows in plain fields take 32 bytes (see TranslationString)
+    private static final int MAX_ROW_BYTES = 48;
+    private static final int FOOTPRINT_ROWS = 1000000;
+
+    private static volatile int sink;
+
+    /**
+     * Row as it was kept before - every value wrapped in JavaFX property.
+     */
+    private static class PropertyRow {
+        private final SimpleStringProperty name;
+        private final SimpleStringProperty text;
+        private final SimpleStringProperty file;
+        private final SimpleBooleanProperty translatable;
+
+        PropertyRow(String name, String text, String file, Boolean translatable) {
+            this.name = new SimpleStringProperty(name);
+            this.text = new SimpleStringProperty(text);
+            this.file = new SimpleStringProperty(file);
+            this.translatable = new SimpleBooleanProperty(translatable);
+        }
+    }
+
+    /**
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) throws Exception {
+        try {
+            checkFootprint();
+            checkNestedModule();
+            checkMarkup();
+            checkSplice();
+            checkMerge();
+        } catch(AssertionError e) {
+            System.out.println("FAILED: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Compares heap used by rows kept in JavaFX properties (before) and in
+     * plain fields (after). Strings are shared by all rows so only the rows
+     * themselves are measured.
+     */
+    private static void checkFootprint() {
+        String name = "string_name";
+        String text = "Text of string";
+        String file = "Qute/strings.xml";
+
+        long start = usedHeap();
+        PropertyRow[] before = new PropertyRow[FOOTPRINT_ROWS];
+        for(int i = 0; i < before.length; i++) {
+            before[i] = new PropertyRow(name, text, file, true);
+        }
+        long beforeBytes = (usedHeap() - start) / FOOTPRINT_ROWS;
+        sink += before.length;
+        before = null;
+
+        start = usedHeap();
+        TranslationString[] after = new TranslationString[FOOTPRINT_ROWS];
+        for(int i = 0; i < after.length; i++) {
+            after[i] = new TranslationString(name, text, file, true);
+        }
+        long afterBytes = (usedHeap() - start) / FOOTPRINT_ROWS;
+        sink += after.length;
+
+        System.out.println(String.format(Locale.ROOT, "footprint: %d B/row before, %d B/row after (references included)",
+                beforeBytes, afterBytes));
+        check(afterBytes <= MAX_ROW_BYTES, "row takes " + afterBytes + " B (limit " + MAX_ROW_BYTES + " B)");
+    }
+
+    /**
+     * Rows of file in nested module of workspace must be found by the name
+     * used when the file is reloaded.
+     */
+    private static void checkNestedModule() throws Exception {
+        File root = Files.createTempDirectory("webtools-check").toFile();
+        File file = new File(root, "app/feature/login/src/main/res/values-cs/strings.xml");
+        new StringsXmlGenerator(1).generate(file, 100);
+        XmlDataSource.setWorkspace(root);
+
+        List<TranslationString> rows = XmlDataSource.loadFile(file);
+        TranslationIndex index = new TranslationIndex(FXCollections.observableArrayList(rows));
+        String fileName = XmlDataSource.getFileName(file);
+        int found = index.getByFile(fileName).size();
+
+        System.out.println("nestedModule: " + found + " of " + rows.size() + " rows of " + fileName);
+        check(fileName.equals("app/feature/login/src/main/res/values-cs/strings.xml"), "file name " + fileName);
+        check(!rows.isEmpty() && found == rows.size(), "found " + found + " of " + rows.size() + " rows");
+    }
+
+    /**
+     * Inline markup of strings must survive loading and saving.
+     */
+    private static void checkMarkup() throws Exception {
+        File file = new File(Files.createTempDirectory("webtools-check").toFile(), "values/strings.xml");
+        file.getParentFile().mkdirs();
+        String text = "Wait <xliff:g id=\"n\" example=\"5\">%d</xliff:g> s &amp; <b>go</b>";
+        Files.write(file.toPath(), ("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n"
+                + "<resources xmlns:xliff=\"urn:oasis:names:tc:xliff:document:1.2\">\n"
+                + "    <string name=\"a\">" + text + "</string>\n"
+                + "</resources>\n").getBytes(StandardCharsets.UTF_8));
+
+        List<TranslationString> rows = XmlDataSource.loadFile(file);
+        check(rows.size() == 1 && rows.get(0).isMarkup() && rows.get(0).getText().equals(text), "loaded " + rows);
+        check(XmlDataSource.saveXmlFile(file, rows), "save failed");
+        List<TranslationString> saved = XmlDataSource.loadFile(file);
+
+        System.out.println("markup: " + saved.get(0).getText());
+        check(saved.size() == 1 && saved.get(0).isMarkup() && saved.get(0).getText().equals(text), "saved " + saved);
+    }
+
+    /**
+     * Saved file differs only in edited strings even if rows are in another
+     * order. File changed on disk is never overwritten.
+     */
+    private static void checkSplice() throws Exception {
+        File file = new File(Files.createTempDirectory("webtools-check").toFile(), "values/strings.xml");
+        file.getParentFile().mkdirs();
+        String xml = "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n<resources>\n"
+                + "    <!-- Comment -->\n"
+                + "    <string name=\"a\">A</string>\n"
+                + "    <plurals name=\"p\"><item quantity=\"one\">%d item</item></plurals>\n"
+                + "    <string name=\"b\">B</string>\n"
+                + "    <string-array name=\"s\"><item>X</item></string-array>\n"
+                + "    <string name=\"c\">C</string>\n"
+                + "</resources>\n";
+        Files.write(file.toPath(), xml.getBytes(StandardCharsets.UTF_8));
+
+        List<TranslationString> rows = XmlDataSource.loadFile(file);
+        Collections.reverse(rows);
+        rows.get(1).setText("B & b");
+        rows.get(1).setModified(true);
+        check(XmlDataSource.saveSnapshot(new XmlDataSource.FileSnapshot(file, rows)), "save failed");
+        String saved = read(file);
+        check(saved.equals(xml.replace(">B<", ">B &amp; b<")), "saved " + saved);
+
+        // Changed on disk and not reloaded
+        String changed = saved.replace("<!-- Comment -->", "<!-- Changed -->");
+        Files.write(file.toPath(), changed.getBytes(StandardCharsets.UTF_8));
+        rows.forEach(n -> n.setModified(false));
+        rows.get(0).setText("c");
+        rows.get(0).setModified(true);
+        XmlDataSource.FileSnapshot snapshot = new XmlDataSource.FileSnapshot(file, rows);
+        boolean overwritten = XmlDataSource.saveSnapshot(snapshot);
+
+        System.out.println("splice: reordered rows spliced, external change " + (snapshot.isConflict() ? "kept" : "lost"));
+        check(!overwritten && snapshot.isConflict() && read(file).equals(changed), "external change overwritten");
+    }
+
+    /**
+     * String added on disk in the middle of file is merged at its place and
+     * the file is spliced (not regenerated) when it is saved afterwards.
+     */
+    private static void checkMerge() throws Exception {
+        File file = new File(Files.createTempDirectory("webtools-check").toFile(), "values/strings.xml");
+        file.getParentFile().mkdirs();
+        String xml = "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n<resources>\n"
+                + "    <!-- Comment -->\n"
+                + "    <string name=\"a\">A</string>\n"
+                + "    <plurals name=\"p\"><item quantity=\"one\">%d item</item></plurals>\n"
+                + "    <string name=\"b\">B</string>\n"
+                + "    <string-array name=\"s\"><item>X</item></string-array>\n"
+                + "    <string name=\"c\">C</string>\n"
+                + "</resources>\n";
+        Files.write(file.toPath(), xml.getBytes(StandardCharsets.UTF_8));
+        ObservableList<TranslationString> data = FXCollections.observableArrayList(XmlDataSource.loadFile(file));
+
+        String changed = xml.replace("    <plurals", "    <string name=\"m\">M</string>\n    <plurals");
+        Files.write(file.toPath(), changed.getBytes(StandardCharsets.UTF_8));
+        XmlDataSource.merge(data, XmlDataSource.getFileName(file), XmlDataSource.reloadFile(file));
+        List<String> names = data.stream().map(TranslationString::getName).collect(Collectors.toList());
+        check(names.equals(Arrays.asList("a", "m", "b", "c")), "merged " + names);
+
+        data.get(2).setText("B2");
+        data.get(2).setModified(true);
+        check(XmlDataSource.saveSnapshot(new XmlDataSource.FileSnapshot(file, data)), "save failed");
+        String saved = read(file);
+
+        System.out.println("merge: " + names + " saved with comment, plurals and string-array");
+        check(saved.equals(changed.replace(">B<", ">B2<")), "saved " + saved);
+    }
+
+    /**
+     * @param file
+     * @return Content of file.
+     */
+    private static String read(File file) throws Exception {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return Bytes of heap used after garbage collection.
+     */
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        // Several rounds so objects with finalizers and soft references settle
+        for(int i = 0; i < 4; i++) {
+            System.gc();
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+
+        return used;
+    }
+
+    /**
+     * @param condition
+     * @param message Description of failure.
+     */
+    static void check(boolean condition, String message) {
+        if(!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/**
+ * @author Ondřej Doněk <ondrejd@gmail.com>
+ * @link https://github.com/ondrejd/webtools-trans-helper for the canonical source repository
+ * @license https://www.gnu.org/licenses/gpl-3.0.en.html GNU General Public License 3.0
+ */
+
+package com.ondrejd;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * Generates synthetic Android <code>strings.xml</code> files.
+ *
+ * Files look like real resources - Czech and English texts with format
+ * specifiers, escaped apostrophes and new lines, inline markup, comments,
+ * untranslatable strings, plurals and string arrays. Output depends only
+ * on the seed so runs are comparable.
+ */
+public class StringsXmlGenerator {
+    private static final String[] NAME_WORDS = {
+        "action", "button", "connection", "dialog", "error", "file", "host",
+        "label", "menu", "message", "password", "ping", "port", "server",
+        "settings", "site", "ssh", "summary", "title", "upload", "user"
+    };
+    private static final String[] TEXT_WORDS = {
+        "Připojení", "k", "serveru", "selhalo", "soubor", "nastavení",
+        "uložit", "heslo", "uživatel", "síť", "Český", "překlad", "the",
+        "connection", "failed", "server", "file", "settings", "save",
+        "password", "user", "network", "host", "port", "timeout", "ping"
+    };
+    private static final String[] SPECIALS = {
+        "%1$s", "%2$d", "%d", "%s", "\\n", "Don\\'t", "\\\"quoted\\\"",
+        "&amp;", "&lt;b&gt;", "<b>tučně</b>", "<xliff:g id=\"count\">%1$d</xliff:g>"
+    };
+
+    private final Random random;
+
+    /**
+     * Constructor
+     * @param seed
+     */
+    public StringsXmlGenerator(long seed) {
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Writes file with given count of strings.
+     * @param file
+     * @param count Count of <code>string</code> elements.
+     */
+    public void generate(File file, int count) throws IOException {
+        file.getParentFile().mkdirs();
+
+        try(Writer out = new BufferedWriter(Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8))) {
+            out.write("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n");
+            out.write("<resources xmlns:xliff=\"urn:oasis:names:tc:xliff:document:1.2\">\n");
+
+            for(int i = 0; i < count; i++) {
+                if(i % 50 == 0) {
+                    out.write("\n    <!-- Section " + (i / 50) + " -->\n");
+                }
+                if(i % 200 == 100) {
+                    out.write("    <plurals name=\"items_" + i + "\">\n");
+                    out.write("        <item quantity=\"one\">%d položka</item>\n");
+                    out.write("        <item quantity=\"other\">%d položek</item>\n");
+                    out.write("    </plurals>\n");
+                }
+                if(i % 300 == 150) {
+                    out.write("    <string-array name=\"array_" + i + "\">\n");
+                    out.write("        <item>" + text() + "</item>\n");
+                    out.write("    </string-array>\n");
+                }
+
+                out.write("    <string name=\"" + name(i) + "\"");
+                if(random.nextInt(20) == 0) {
+                    out.write(" translatable=\"false\"");
+                }
+                out.write(">" + text() + "</string>\n");
+            }
+
+            out.write("</resources>\n");
+        }
+    }
+
+    /**
+     * @param i
+     * @return Unique string name.
+     */
+    private String name(int i) {
+        return NAME_WORDS[random.nextInt(NAME_WORDS.length)] + "_"
+                + NAME_WORDS[random.nextInt(NAME_WORDS.length)] + "_" + i;
+    }
+
+    /**
+     * @return Random text (2 - 12 words, sometimes with special content).
+     */
+    private String text() {
+        StringBuilder text = new StringBuilder();
+        int words = 2 + random.nextInt(11);
+
+        for(int i = 0; i < words; i++) {
+            if(i > 0) {
+                text.append(' ');
+            }
+            if(random.nextInt(8) == 0) {
+                text.append(SPECIALS[random.nextInt(SPECIALS.length)]);
+            } else {
+                text.append(TEXT_WORDS[random.nextInt(TEXT_WORDS.length)]);
+            }
+        }
+
+        return text.toString();
+    }
+}
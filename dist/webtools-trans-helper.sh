@@ -1,5 +1,5 @@
 #!/bin/sh
 # Run WebTools Translation Helper
 
-java -jar webtools-trans-helper.jar
+java -jar webtools-trans-helper.jar "$@"
 
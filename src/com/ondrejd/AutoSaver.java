@@ -0,0 +1,123 @@
+/**
+ * @author Ondřej Doněk <ondrejd@gmail.com>
+ * @link https://github.com/ondrejd/webtools-trans-helper for the canonical source repository
+ * @license https://www.gnu.org/licenses/gpl-3.0.en.html GNU General Public License 3.0
+ */
+
+package com.ondrejd;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import javafx.application.Platform;
+import javafx.collections.ObservableList;
+
+/**
+ * Saves data in background after edits calm down.
+ *
+ * Every call of {@link #schedule()} postpones the save by the quiet period
+ * so a burst of edits results in a single write. All writes run on one
+ * thread so a file is never written by two threads at once. Once all
+ * files are saved the edit journal is compacted.
+ */
+public class AutoSaver {
+    private final ObservableList<TranslationString> data;
+    private final EditJournal journal;
+    private final long delay;
+    private final Consumer<XmlDataSource.FileSnapshot> onFailed;
+    private final ScheduledExecutorService writer;
+    private ScheduledFuture<?> pending;
+
+    /**
+     * Constructor
+     * @param data Data rows.
+     * @param journal Journal of edits.
+     * @param delay Quiet period (in milliseconds) before data are saved.
+     * @param onFailed Called on writer thread with snapshot which was not
+     *                 saved (its rows are marked as modified again).
+     */
+    public AutoSaver(ObservableList<TranslationString> data, EditJournal journal, long delay, Consumer<XmlDataSource.FileSnapshot> onFailed) {
+        this.data = data;
+        this.journal = journal;
+        this.delay = delay;
+        this.onFailed = onFailed;
+        // Writer thread is not daemon so the final save completes even
+        // after the JavaFX toolkit exits
+        this.writer = Executors.newSingleThreadScheduledExecutor(r -> {
+            return new Thread(r, "xml-writer");
+        });
+    }
+
+    /**
+     * Schedules save after the quiet period (replaces already scheduled one).
+     */
+    public synchronized void schedule() {
+        if(writer.isShutdown()) {
+            return;
+        }
+
+        if(pending != null) {
+            pending.cancel(false);
+        }
+
+        pending = writer.schedule(() -> {
+            Platform.runLater(this::saveNow);
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Takes snapshot of modified files and writes them in background.
+     * Must be called on JavaFX thread.
+     */
+    public synchronized void saveNow() {
+        if(writer.isShutdown()) {
+            return;
+        }
+
+        // Snapshot contains all edits journaled so far
+        long mark = journal.mark();
+        List<XmlDataSource.FileSnapshot> snapshots = XmlDataSource.snapshot(data);
+        if(snapshots.isEmpty()) {
+            return;
+        }
+
+        writer.execute(() -> write(snapshots, mark));
+    }
+
+    /**
+     * Writes pending changes, stops the writer and closes the edit journal
+     * once the last write (and compaction of journal) is done. Does not wait
+     * for the write to finish. Must be called on JavaFX thread.
+     */
+    public synchronized void close() {
+        if(pending != null) {
+            pending.cancel(false);
+        }
+
+        saveNow();
+        writer.execute(journal::close);
+        writer.shutdown();
+    }
+
+    /**
+     * @param snapshots
+     * @param mark Mark of edit journal taken with snapshots.
+     */
+    private void write(List<XmlDataSource.FileSnapshot> snapshots, long mark) {
+        boolean saved = true;
+        for(XmlDataSource.FileSnapshot snapshot : snapshots) {
+            if(!XmlDataSource.saveSnapshot(snapshot)) {
+                Platform.runLater(snapshot::markModified);
+                onFailed.accept(snapshot);
+                saved = false;
+            }
+        }
+
+        if(saved) {
+            journal.compact(mark);
+        }
+    }
+}
@@ -0,0 +1,330 @@
+/**
+ * @author Ondřej Doněk <ondrejd@gmail.com>
+ * @link https://github.com/ondrejd/webtools-trans-helper for the canonical source repository
+ * @license https://www.gnu.org/licenses/gpl-3.0.en.html GNU General Public License 3.0
+ */
+
+package com.ondrejd;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+
+/**
+ * Headless command line mode (for scripts and commit hooks).
+ *
+ * Works directly with {@link XmlDataSource} and never starts JavaFX
+ * toolkit. Every command takes optional list of XML files or workspace
+ * directories (which are scanned for files), files of workspace saved by
+ * the application are used if none is given.
+ *
+ * <pre>
+ * stats [file...]      prints count of (untranslated) strings per file
+ * validate [file...]   checks files and translations, exits with 1 if problems were found
+ * export [file...]     prints all strings as CSV (name,file,translatable,text)
+ * normalize [file...]  re-saves files with strings only in normalized form
+ * revisions [file...]  lists stored revisions of files (0 is the newest one)
+ * restore n file...    restores revision n of files
+ * </pre>
+ */
+public class CommandLine {
+    private static final List<String> COMMANDS = Arrays.asList("stats", "validate", "export", "normalize", "revisions", "restore");
+
+    /**
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) {
+        System.exit(run(args));
+    }
+
+    /**
+     * @param arg
+     * @return Returns TRUE if argument is name of command.
+     */
+    public static boolean isCommand(String arg) {
+        return COMMANDS.contains(arg);
+    }
+
+    /**
+     * Runs command.
+     * @param args Command and its arguments.
+     * @return Exit code.
+     */
+    public static int run(String[] args) {
+        if(args.length == 0 || !isCommand(args[0])) {
+            usage(System.err);
+            return 2;
+        }
+
+        // Restore takes revision and explicit list of files
+        int first = 1;
+        int revision = 0;
+        if(args[0].equals("restore")) {
+            try {
+                revision = args.length > 2 ? Integer.parseInt(args[1]) : -1;
+            } catch(NumberFormatException nfe) {
+                revision = -1;
+            }
+            if(revision < 0) {
+                usage(System.err);
+                return 2;
+            }
+            first = 2;
+        }
+
+        List<File> files = new ArrayList<>();
+        if(args.length > first) {
+            for(int i = first; i < args.length; i++) {
+                File file = new File(args[i]);
+                if(file.isDirectory()) {
+                    XmlDataSource.setWorkspace(file);
+                    XmlDataSource.getXmlFiles().forEach(n -> files.add(new File(n)));
+                } else {
+                    files.add(file);
+                }
+            }
+        } else if(XmlDataSource.useSavedWorkspace()) {
+            XmlDataSource.getXmlFiles().forEach(n -> files.add(new File(n)));
+        } else {
+            System.err.println("No workspace is configured - pass files or workspace directory (or run the application with --workspace=DIR once)");
+            return 2;
+        }
+
+        try {
+            switch(args[0]) {
+                case "stats":
+                    return stats(files);
+                case "validate":
+                    return validate(files);
+                case "export":
+                    return export(files);
+                case "normalize":
+                    return normalize(files);
+                case "revisions":
+                    return revisions(files);
+                case "restore":
+                    return restore(files, revision);
+                default:
+                    return 2;
+            }
+        } catch(IOException ioe) {
+            System.err.println(ioe.getMessage());
+            return 1;
+        }
+    }
+
+    /**
+     * @param out
+     */
+    private static void usage(PrintStream out) {
+        out.println("Usage: webtools-trans-helper <command> [file|workspace...]");
+        out.println();
+        out.println("Commands:");
+        out.println("  stats       print count of strings and untranslated strings");
+        out.println("  validate    check files, exit with 1 if problems were found");
+        out.println("  export      print all strings as CSV");
+        out.println("  normalize   re-save files with strings only in normalized form");
+        out.println("  revisions   list stored revisions of files (0 is the newest one)");
+        out.println("  restore n   restore revision n of given files");
+    }
+
+    /**
+     * @param files
+     * @return Exit code.
+     */
+    private static int stats(List<File> files) {
+        int total = 0;
+        int totalUntranslated = 0;
+
+        System.out.println(String.format("%-40s %10s %10s %13s", "file", "strings", "fixed", "untranslated"));
+        for(File file : files) {
+            List<TranslationString> rows = XmlDataSource.loadFile(file);
+            int fixed = 0;
+            int untranslated = 0;
+            for(TranslationString row : rows) {
+                if(!row.isTranslatable()) {
+                    fixed++;
+                } else if(row.getText().trim().isEmpty()) {
+                    untranslated++;
+                }
+            }
+            System.out.println(String.format("%-40s %10d %10d %13d", XmlDataSource.getFileName(file), rows.size(), fixed, untranslated));
+            total += rows.size();
+            totalUntranslated += untranslated;
+        }
+        System.out.println(String.format("%-40s %10d %10s %13d", "total", total, "", totalUntranslated));
+
+        return 0;
+    }
+
+    /**
+     * Checks names of strings and translations (format specifiers, tags,
+     * escapes - see {@link TranslationValidator}). Translations are
+     * compared with source strings of given files.
+     * @param files
+     * @return Exit code (1 if any problem was found).
+     */
+    private static int validate(List<File> files) {
+        int problems = 0;
+        ObservableList<TranslationString> all = FXCollections.observableArrayList();
+
+        for(File file : files) {
+            String fileName = XmlDataSource.getFileName(file);
+            if(!file.exists()) {
+                System.out.println(fileName + ": file does not exist");
+                problems++;
+                continue;
+            }
+
+            List<TranslationString> rows;
+            try {
+                rows = XmlDataSource.loadXmlFile(file, null);
+            } catch(Exception e) {
+                System.out.println(fileName + ": " + e.getMessage());
+                problems++;
+                continue;
+            }
+
+            Set<String> names = new HashSet<>();
+            for(TranslationString row : rows) {
+                if(row.getName().isEmpty()) {
+                    System.out.println(fileName + ": string without name");
+                    problems++;
+                } else if(!names.add(row.getName())) {
+                    System.out.println(fileName + ": " + row.getName() + ": duplicate name");
+                    problems++;
+                }
+            }
+            all.addAll(rows);
+        }
+
+        // The same checks as in the application (without JavaFX thread)
+        LocaleAlignment alignment = new LocaleAlignment(all);
+        String[] sources = new String[all.size()];
+        String[] texts = new String[all.size()];
+        for(int i = 0; i < all.size(); i++) {
+            sources[i] = alignment.getSourceText(all.get(i));
+            texts[i] = all.get(i).getText();
+        }
+        String[] result = TranslationValidator.check(sources, texts);
+        for(int i = 0; i < result.length; i++) {
+            if(result[i] != null) {
+                System.out.println(all.get(i).getFile() + ": " + all.get(i).getName() + ": " + result[i]);
+                problems++;
+            }
+        }
+
+        return problems > 0 ? 1 : 0;
+    }
+
+    /**
+     * @param files
+     * @return Exit code.
+     */
+    private static int export(List<File> files) throws IOException {
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+        out.write("name,file,translatable,text\n");
+
+        for(File file : files) {
+            for(TranslationString row : XmlDataSource.loadFile(file)) {
+                out.write(csv(row.getName()) + "," + csv(row.getFile()) + "," + row.isTranslatable() + "," + csv(row.getText()) + "\n");
+            }
+        }
+        out.flush();
+
+        return 0;
+    }
+
+    /**
+     * Files are regenerated from their strings, so files with anything else
+     * (comments, plurals, string arrays...) are refused.
+     * @param files
+     * @return Exit code (1 if any file was refused or not saved).
+     */
+    private static int normalize(List<File> files) {
+        int failed = 0;
+
+        for(File file : files) {
+            if(!file.exists()) {
+                continue;
+            }
+
+            String fileName = XmlDataSource.getFileName(file);
+            String lost;
+            try {
+                lost = XmlDataSource.getLostContent(file);
+            } catch(Exception e) {
+                lost = e.getMessage();
+            }
+            if(lost != null) {
+                System.err.println(fileName + ": not normalized, content would be lost (" + lost + ")");
+                failed++;
+            } else if(!XmlDataSource.saveXmlFile(file, XmlDataSource.loadFile(file))) {
+                failed++;
+            }
+        }
+
+        return failed > 0 ? 1 : 0;
+    }
+
+    /**
+     * @param files
+     * @return Exit code.
+     */
+    private static int revisions(List<File> files) {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+
+        for(File file : files) {
+            List<RevisionStore.Revision> revisions = RevisionStore.getRevisions(file);
+            if(revisions.isEmpty()) {
+                continue;
+            }
+
+            System.out.println(file.getPath());
+            for(int i = 0; i < revisions.size(); i++) {
+                RevisionStore.Revision revision = revisions.get(i);
+                System.out.println(String.format("%5d  %s  %10d B", i, format.format(new Date(revision.getTime())), revision.getSize()));
+            }
+        }
+
+        return 0;
+    }
+
+    /**
+     * @param files
+     * @param revision Index of revision (0 is the newest one).
+     * @return Exit code.
+     */
+    private static int restore(List<File> files, int revision) throws IOException {
+        for(File file : files) {
+            RevisionStore.restore(file, revision);
+        }
+
+        return 0;
+    }
+
+    /**
+     * @param value
+     * @return Value quoted for CSV (if needed).
+     */
+    static String csv(String value) {
+        if(value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+}
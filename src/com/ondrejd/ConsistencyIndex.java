@@ -0,0 +1,344 @@
+/**
+ * @author Ondřej Doněk <ondrejd@gmail.com>
+ * @link https://github.com/ondrejd/webtools-trans-helper for the canonical source repository
+ * @license https://www.gnu.org/licenses/gpl-3.0.en.html GNU General Public License 3.0
+ */
+
+package com.ondrejd;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+
+/**
+ * Finds inconsistent translations - rows of the same locale which share
+ * name (e.g. the same key in several applications) or source text but
+ * have different (non-empty) translations. Strings of the source locale
+ * are not translations so they are never grouped (they may differ on
+ * purpose).
+ *
+ * Rows are grouped by hash maps while they are loaded and only groups
+ * touched by a change are checked again, so keeping the groups costs a
+ * map lookup per loaded or edited row. Most names and texts are unique so
+ * a group is created only when the second row with the same key comes.
+ */
+public class ConsistencyIndex {
+    /**
+     * Rows sharing name or source text.
+     */
+    private static class Group {
+        private final String locale;
+        private final String key;
+        private final List<TranslationString> rows = new ArrayList<>(2);
+        private String text;
+        private boolean inconsistent = false;
+
+        private Group(String locale, String key) {
+            this.locale = locale;
+            this.key = key;
+        }
+
+        /**
+         * Adds row (checks only the new row against the others).
+         * @param row
+         */
+        private void add(TranslationString row) {
+            rows.add(row);
+            if(!inconsistent) {
+                compare(row.getText());
+            }
+        }
+
+        /**
+         * Checks all rows again.
+         */
+        private void check() {
+            text = null;
+            inconsistent = false;
+            for(int i = 0; i < rows.size() && !inconsistent; i++) {
+                compare(rows.get(i).getText());
+            }
+        }
+
+        /**
+         * @param other Translation of row in group.
+         */
+        private void compare(String other) {
+            if(other.isEmpty()) {
+                return;
+            }
+
+            if(text == null) {
+                text = other;
+            } else if(!text.equals(other)) {
+                inconsistent = true;
+            }
+        }
+    }
+
+    private static final String NO_LOCALE = "\u0000";
+    private static final Comparator<Group> ORDER = Comparator.comparing((Group n) -> n.locale).thenComparing(n -> n.key);
+
+    private final LocaleAlignment alignment;
+    // Locale by file name (there are only a few files)
+    private final Map<String, String> locales = new HashMap<>();
+    // Locale -> key -> single row or group of rows
+    private final Map<String, Map<String, Object>> byName = new HashMap<>();
+    private final Map<String, Map<String, Object>> bySource = new HashMap<>();
+    private final Map<TranslationString, String> sourceKeys = new IdentityHashMap<>();
+    private final Set<Group> inconsistent = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    /**
+     * Constructor (must be created after alignment so the alignment is
+     * updated first when data change).
+     * @param data Data rows.
+     * @param alignment Alignment of translations with source strings.
+     */
+    public ConsistencyIndex(ObservableList<TranslationString> data, LocaleAlignment alignment) {
+        this.alignment = alignment;
+        data.forEach(this::add);
+        data.addListener((ListChangeListener.Change<? extends TranslationString> c) -> {
+            while(c.next()) {
+                if(c.wasRemoved()) {
+                    c.getRemoved().forEach(this::remove);
+                }
+                if(c.wasAdded()) {
+                    c.getAddedSubList().forEach(this::add);
+                }
+            }
+        });
+    }
+
+    /**
+     * @return Count of groups with inconsistent translations.
+     */
+    public int getInconsistentCount() {
+        return inconsistent.size();
+    }
+
+    /**
+     * @param row
+     * @return Returns TRUE if row belongs to group with inconsistent translations.
+     */
+    public boolean isInconsistent(TranslationString row) {
+        if(!row.isTranslatable()) {
+            return false;
+        }
+
+        String locale = getLocale(row);
+        Group name = getGroup(byName.get(locale), row.getName());
+        Group source = getGroup(bySource.get(locale), sourceKeys.get(row));
+        return (name != null && name.inconsistent) || (source != null && source.inconsistent);
+    }
+
+    /**
+     * @return Rows of inconsistent groups (rows of one group are next to each other).
+     */
+    public List<TranslationString> getInconsistentRows() {
+        List<Group> sorted = new ArrayList<>(inconsistent);
+        sorted.sort(ORDER);
+
+        List<TranslationString> result = new ArrayList<>();
+        Set<TranslationString> added = Collections.newSetFromMap(new IdentityHashMap<>());
+        sorted.forEach(n -> n.rows.forEach(row -> {
+            if(added.add(row)) {
+                result.add(row);
+            }
+        }));
+
+        return result;
+    }
+
+    /**
+     * Updates groups after text of row was edited.
+     * @param row
+     */
+    public void update(TranslationString row) {
+        if(!row.isTranslatable()) {
+            return;
+        }
+
+        String locale = getLocale(row);
+        if(locale.isEmpty()) {
+            // Translations of edited source string now have another source text
+            alignment.getTranslations(row).forEach(this::updateSource);
+            return;
+        }
+
+        check(getGroup(byName.get(locale), row.getName()));
+        if(!locale.equals(NO_LOCALE)) {
+            updateSource(row);
+        }
+    }
+
+    /**
+     * @param row
+     * @return Locale of row ("" for source locale, {@link #NO_LOCALE} if
+     *         row is not from Android values directory).
+     */
+    private String getLocale(TranslationString row) {
+        // Locale is resolved once per file
+        String locale = locales.get(row.getFile());
+        if(locale == null) {
+            locale = LocaleAlignment.getLocale(row);
+            locale = locale == null ? NO_LOCALE : locale;
+            locales.put(row.getFile(), locale);
+        }
+
+        return locale;
+    }
+
+    /**
+     * @param row
+     */
+    private void add(TranslationString row) {
+        if(!row.isTranslatable()) {
+            return;
+        }
+
+        String locale = getLocale(row);
+        if(locale.isEmpty()) {
+            alignment.getTranslations(row).forEach(this::updateSource);
+            return;
+        }
+
+        add(byName.computeIfAbsent(locale, k -> new HashMap<>()), locale, row.getName(), row);
+        if(!locale.equals(NO_LOCALE)) {
+            updateSource(row);
+        }
+    }
+
+    /**
+     * @param row
+     */
+    private void remove(TranslationString row) {
+        if(!row.isTranslatable()) {
+            return;
+        }
+
+        String locale = getLocale(row);
+        if(locale.isEmpty()) {
+            alignment.getTranslations(row).forEach(this::updateSource);
+            return;
+        }
+
+        remove(byName.get(locale), row.getName(), row);
+        removeSource(row);
+    }
+
+    /**
+     * Moves translation to group of its current source text.
+     * @param row
+     */
+    private void updateSource(TranslationString row) {
+        if(!row.isTranslatable()) {
+            return;
+        }
+
+        String locale = getLocale(row);
+        String source = alignment.getSourceText(row);
+        String key = sourceKeys.get(row);
+        if(key != null && key.equals(source)) {
+            check(getGroup(bySource.get(locale), key));
+            return;
+        }
+
+        removeSource(row);
+        if(source != null && !source.isEmpty()) {
+            add(bySource.computeIfAbsent(locale, k -> new HashMap<>()), locale, source, row);
+            sourceKeys.put(row, source);
+        }
+    }
+
+    /**
+     * @param row
+     */
+    private void removeSource(TranslationString row) {
+        String key = sourceKeys.remove(row);
+        if(key != null) {
+            remove(bySource.get(getLocale(row)), key, row);
+        }
+    }
+
+    /**
+     * @param groups
+     * @param key
+     * @return Group with given key or NULL if there is none (or only one row).
+     */
+    private static Group getGroup(Map<String, Object> groups, String key) {
+        Object value = groups == null || key == null ? null : groups.get(key);
+        return value instanceof Group ? (Group) value : null;
+    }
+
+    /**
+     * @param groups
+     * @param locale
+     * @param key
+     * @param row
+     */
+    private void add(Map<String, Object> groups, String locale, String key, TranslationString row) {
+        Object value = groups.putIfAbsent(key, row);
+        if(value == null) {
+            return;
+        }
+
+        Group group;
+        if(value instanceof Group) {
+            group = (Group) value;
+        } else {
+            group = new Group(locale, key);
+            group.add((TranslationString) value);
+            groups.put(key, group);
+        }
+        group.add(row);
+        mark(group);
+    }
+
+    /**
+     * @param groups
+     * @param key
+     * @param row
+     */
+    private void remove(Map<String, Object> groups, String key, TranslationString row) {
+        Object value = groups == null ? null : groups.get(key);
+        if(value == row) {
+            groups.remove(key);
+        } else if(value instanceof Group) {
+            Group group = (Group) value;
+            group.rows.remove(row);
+            check(group);
+            if(group.rows.isEmpty()) {
+                groups.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Checks all rows of group.
+     * @param group
+     */
+    private void check(Group group) {
+        if(group != null) {
+            group.check();
+            mark(group);
+        }
+    }
+
+    /**
+     * @param group
+     */
+    private void mark(Group group) {
+        if(group.inconsistent) {
+            inconsistent.add(group);
+        } else {
+            inconsistent.remove(group);
+        }
+    }
+}
@@ -0,0 +1,500 @@
+/**
+ * @author Ondřej Doněk <ondrejd@gmail.com>
+ * @link https://github.com/ondrejd/webtools-trans-helper for the canonical source repository
+ * @license https://www.gnu.org/licenses/gpl-3.0.en.html GNU General Public License 3.0
+ */
+
+package com.ondrejd;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of edits (write-ahead log) with undo and redo.
+ *
+ * Every edit is appended to the journal file before it is saved to XML so
+ * unsaved work can be recovered after a crash. Records are written by a
+ * background thread and forced to disk in batches (at most once per
+ * {@link #SYNC_DELAY} milliseconds), so an edit costs only encoding of the
+ * record on JavaFX thread. Once edits are saved to XML the journal is
+ * compacted - records up to the saved mark are dropped.
+ *
+ * Record: length, sequence number, file, name, old text, new text, CRC32.
+ */
+public class EditJournal {
+    private static final int MAGIC = 0x5754484A; // "WTHJ"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final long SYNC_DELAY = 100;
+    private static final Path JOURNAL_DIR = Paths.get(System.getProperty("user.home"), ".webtools-trans-helper");
+
+    /**
+     * Single edit of row text.
+     */
+    public static class Edit {
+        private final long seq;
+        private final TranslationString row;
+        private final String file;
+        private final String name;
+        private final String oldText;
+        private final String newText;
+
+        private Edit(long seq, TranslationString row, String file, String name, String oldText, String newText) {
+            this.seq = seq;
+            this.row = row;
+            this.file = file;
+            this.name = name;
+            this.oldText = oldText;
+            this.newText = newText;
+        }
+
+        /**
+         * @return Edited row (NULL for edits read from journal file).
+         */
+        public TranslationString getRow() {
+            return row;
+        }
+
+        /**
+         * @return String
+         */
+        public String getFile() {
+            return file;
+        }
+
+        /**
+         * @return String
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return Text before the edit.
+         */
+        public String getOldText() {
+            return oldText;
+        }
+
+        /**
+         * @return Text after the edit.
+         */
+        public String getNewText() {
+            return newText;
+        }
+    }
+
+    private final Path path;
+    private final ScheduledExecutorService writer;
+    private final Deque<Edit> undoStack = new ArrayDeque<>();
+    private final Deque<Edit> redoStack = new ArrayDeque<>();
+    private final List<Edit> recovered = new ArrayList<>();
+    private long seq = 0;
+    // Accessed only by writer thread (after constructor)
+    private FileChannel channel;
+    private boolean syncPending = false;
+
+    /**
+     * Constructor - opens journal of workspace and reads edits which were
+     * not saved in the previous session (journal is compacted after every
+     * save so there are only a few of them).
+     * @param workspace Workspace directory or NULL if none is set.
+     */
+    public EditJournal(Path workspace) {
+        path = JOURNAL_DIR.resolve(getFileName(workspace));
+        open();
+        // Writer is not daemon so the last records are forced to disk even
+        // after the JavaFX toolkit exits
+        writer = Executors.newSingleThreadScheduledExecutor(r -> {
+            return new Thread(r, "edit-journal");
+        });
+    }
+
+    /**
+     * @param workspace
+     * @return Name of journal file (every workspace has its own).
+     */
+    private static String getFileName(Path workspace) {
+        if(workspace == null) {
+            return "journal.log";
+        }
+
+        byte[] hash = SnapshotCache.newDigest().digest(workspace.toString().getBytes(StandardCharsets.UTF_8));
+        StringBuilder name = new StringBuilder("journal-");
+        for(byte b : hash) {
+            name.append(String.format("%02x", b));
+        }
+
+        return name.append(".log").toString();
+    }
+
+    /**
+     * Records edit of row and makes it the last undoable one. Must be
+     * called on JavaFX thread.
+     * @param row
+     * @param oldText
+     * @param newText
+     */
+    public void record(TranslationString row, String oldText, String newText) {
+        Edit edit = append(row, oldText, newText);
+        undoStack.push(edit);
+        redoStack.clear();
+    }
+
+    /**
+     * Reverts the last edit (the revert is journaled too). Must be called
+     * on JavaFX thread.
+     * @return Reverted edit (its old text should be set to row) or NULL.
+     */
+    public Edit undo() {
+        Edit edit = undoStack.poll();
+        if(edit == null) {
+            return null;
+        }
+
+        append(edit.row, edit.newText, edit.oldText);
+        redoStack.push(edit);
+        return edit;
+    }
+
+    /**
+     * Repeats the last reverted edit. Must be called on JavaFX thread.
+     * @return Repeated edit (its new text should be set to row) or NULL.
+     */
+    public Edit redo() {
+        Edit edit = redoStack.poll();
+        if(edit == null) {
+            return null;
+        }
+
+        append(edit.row, edit.oldText, edit.newText);
+        undoStack.push(edit);
+        return edit;
+    }
+
+    /**
+     * @return Returns TRUE if there is an edit to undo.
+     */
+    public boolean canUndo() {
+        return !undoStack.isEmpty();
+    }
+
+    /**
+     * @return Returns TRUE if there is an edit to redo.
+     */
+    public boolean canRedo() {
+        return !redoStack.isEmpty();
+    }
+
+    /**
+     * @return Sequence number of the last journaled edit (pass it to
+     *         {@link #compact(long)} once everything edited so far is saved).
+     */
+    public long mark() {
+        return seq;
+    }
+
+    /**
+     * @return Edits which were not saved in the previous session (in order
+     *         they were made). Rows of the edits have to be looked up by
+     *         file and name.
+     */
+    public List<Edit> getRecovered() {
+        return Collections.unmodifiableList(recovered);
+    }
+
+    /**
+     * Drops edits which were read from journal file (e.g. when none of
+     * them is needed).
+     */
+    public void discardRecovered() {
+        if(!recovered.isEmpty()) {
+            compact(recovered.get(recovered.size() - 1).seq);
+        }
+    }
+
+    /**
+     * Drops records of edits which were saved. Can be called from any thread.
+     * @param mark Value of {@link #mark()} taken before the save.
+     */
+    public void compact(long mark) {
+        execute(() -> compactNow(mark));
+    }
+
+    /**
+     * Forces pending records to disk and closes the journal. Does not wait
+     * for it. Can be called from any thread (after the last compaction was
+     * requested - see {@link AutoSaver#close()}).
+     */
+    public void close() {
+        execute(() -> {
+            try {
+                if(channel != null) {
+                    channel.force(false);
+                    channel.close();
+                    channel = null;
+                }
+            } catch(IOException ioe) {
+                ioe.printStackTrace();
+            }
+        });
+        writer.shutdown();
+    }
+
+    /**
+     * @param task Task for writer thread (dropped and reported if journal
+     *             is closed).
+     */
+    private void execute(Runnable task) {
+        try {
+            writer.execute(task);
+        } catch(RejectedExecutionException ree) {
+            ree.printStackTrace();
+        }
+    }
+
+    /**
+     * Encodes edit and passes it to writer thread.
+     * @param row
+     * @param oldText
+     * @param newText
+     * @return Edit
+     */
+    private Edit append(TranslationString row, String oldText, String newText) {
+        Edit edit = new Edit(++seq, row, row.getFile(), row.getName(), oldText, newText);
+        byte[] record = encode(edit);
+        execute(() -> write(record));
+        return edit;
+    }
+
+    /**
+     * @param edit
+     * @return Record of edit (including length and checksum).
+     */
+    private static byte[] encode(Edit edit) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0);
+            out.writeLong(edit.seq);
+            SnapshotCache.writeString(out, edit.file);
+            SnapshotCache.writeString(out, edit.name);
+            SnapshotCache.writeString(out, edit.oldText);
+            SnapshotCache.writeString(out, edit.newText);
+            out.writeInt(0);
+
+            ByteBuffer record = ByteBuffer.wrap(bytes.toByteArray());
+            int length = record.capacity() - 8;
+            CRC32 crc = new CRC32();
+            crc.update(record.array(), 4, length);
+            record.putInt(0, length);
+            record.putInt(4 + length, (int) crc.getValue());
+            return record.array();
+        } catch(IOException ioe) {
+            // Writing to byte array does not fail
+            throw new IllegalStateException(ioe);
+        }
+    }
+
+    /**
+     * Reads edits left in journal file and opens it for appending.
+     */
+    private void open() {
+        try {
+            Files.createDirectories(JOURNAL_DIR);
+            long valid = HEADER_SIZE;
+            if(Files.exists(path)) {
+                ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+                if(buffer.remaining() >= HEADER_SIZE && buffer.getInt() == MAGIC && buffer.getInt() == VERSION) {
+                    valid = read(buffer);
+                } else {
+                    valid = 0;
+                }
+            } else {
+                valid = 0;
+            }
+
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            if(valid == 0) {
+                channel.truncate(0);
+                channel.write(header());
+                channel.force(false);
+            } else {
+                // Drop torn record (written only partially before crash)
+                channel.truncate(valid);
+            }
+            channel.position(channel.size());
+        } catch(IOException ioe) {
+            ioe.printStackTrace();
+        }
+    }
+
+    /**
+     * @param buffer Content of journal file (after header).
+     * @return Length of valid part of journal file.
+     */
+    private long read(ByteBuffer buffer) {
+        long maxSeq = 0;
+        int valid = buffer.position();
+
+        try {
+            while(buffer.remaining() >= 4) {
+                int length = buffer.getInt();
+                if(length < 0 || length + 4 > buffer.remaining()) {
+                    break;
+                }
+
+                CRC32 crc = new CRC32();
+                crc.update(buffer.array(), buffer.position(), length);
+                if(buffer.getInt(buffer.position() + length) != (int) crc.getValue()) {
+                    break;
+                }
+
+                long recordSeq = buffer.getLong();
+                String file = SnapshotCache.readString(buffer);
+                String name = SnapshotCache.readString(buffer);
+                String oldText = SnapshotCache.readString(buffer);
+                String newText = SnapshotCache.readString(buffer);
+                buffer.getInt();
+                recovered.add(new Edit(recordSeq, null, file, name, oldText, newText));
+                maxSeq = Math.max(maxSeq, recordSeq);
+                valid = buffer.position();
+            }
+        } catch(BufferUnderflowException | IllegalArgumentException e) {
+            // Torn record
+        }
+
+        // Sequence numbers continue after the recovered ones
+        seq = maxSeq;
+        return valid;
+    }
+
+    /**
+     * @return Header of journal file.
+     */
+    private static ByteBuffer header() {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.flip();
+        return header;
+    }
+
+    /**
+     * @param record
+     */
+    private void write(byte[] record) {
+        if(channel == null) {
+            return;
+        }
+
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(record);
+            while(buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            // Group commit - records written in the meantime share one sync
+            if(!syncPending) {
+                syncPending = true;
+                writer.schedule(this::sync, SYNC_DELAY, TimeUnit.MILLISECONDS);
+            }
+        } catch(IOException ioe) {
+            ioe.printStackTrace();
+        } catch(RejectedExecutionException ree) {
+            // Journal is closing - it is forced on close
+        }
+    }
+
+    /**
+     * Forces written records to disk.
+     */
+    private void sync() {
+        syncPending = false;
+        if(channel == null) {
+            return;
+        }
+
+        try {
+            channel.force(false);
+        } catch(IOException ioe) {
+            ioe.printStackTrace();
+        }
+    }
+
+    /**
+     * Rewrites journal file without records up to the mark.
+     * @param mark
+     */
+    private void compactNow(long mark) {
+        if(channel == null) {
+            return;
+        }
+
+        Path temp = null;
+        try {
+            channel.force(false);
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+            buffer.position(HEADER_SIZE);
+
+            // Records are ordered by sequence number - find the first kept one
+            int start = buffer.position();
+            while(buffer.remaining() >= 12) {
+                int length = buffer.getInt();
+                if(buffer.getLong() > mark) {
+                    break;
+                }
+                start += 4 + length + 4;
+                buffer.position(start);
+            }
+
+            temp = Files.createTempFile(JOURNAL_DIR, "journal", ".tmp");
+            try(FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                out.write(header());
+                out.write(ByteBuffer.wrap(buffer.array(), start, buffer.capacity() - start));
+                out.force(false);
+            }
+            channel.close();
+            try {
+                Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch(AtomicMoveNotSupportedException amnse) {
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+            channel = FileChannel.open(path, StandardOpenOption.WRITE);
+            channel.position(channel.size());
+        } catch(IOException ioe) {
+            ioe.printStackTrace();
+            try {
+                if(temp != null) {
+                    Files.deleteIfExists(temp);
+                }
+                if(channel == null || !channel.isOpen()) {
+                    channel = FileChannel.open(path, StandardOpenOption.WRITE);
+                    channel.position(channel.size());
+                }
+            } catch(IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
@@ -6,19 +6,38 @@
 
 package com.ondrejd;
 
+import java.io.File;
+import java.io.IOException;
 import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.ResourceBundle;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.prefs.*;
 import javafx.application.Platform;
 import javafx.beans.binding.Bindings;
+import javafx.beans.property.ReadOnlyStringWrapper;
 import javafx.beans.value.ChangeListener;
 import javafx.collections.FXCollections;
 import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
-import javafx.collections.transformation.FilteredList;
 import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
 import javafx.fxml.FXML;
@@ -30,6 +49,7 @@ import javafx.scene.control.ButtonType;
 import javafx.scene.control.CheckBox;
 import javafx.scene.control.ComboBox;
 import javafx.scene.control.Label;
+import javafx.scene.control.ListView;
 import javafx.scene.control.Menu;
 import javafx.scene.control.MenuItem;
 import javafx.scene.control.SelectionMode;
@@ -37,16 +57,26 @@ import javafx.scene.control.TableCell;
 import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableColumn.CellEditEvent;
 import javafx.scene.control.TablePosition;
+import javafx.scene.control.TableRow;
 import javafx.scene.control.TextField;
 import javafx.scene.control.TableView;
+import javafx.scene.control.TextArea;
 import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.scene.control.cell.TextFieldTableCell;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
+import javafx.scene.input.KeyCombination;
+import javafx.scene.input.KeyEvent;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.layout.HBox;
+import javafx.stage.FileChooser;
 import javafx.util.StringConverter;
 
 public class FXMLDocumentController implements Initializable {
     public final static String ALL_FILES = "Všechny soubory";
+    public final static String INCONSISTENT = "Nekonzistentní překlady";
+    public final static String INVALID = "Chybné překlady";
+    private static final Locale SORT_LOCALE = new Locale("cs", "CZ");
 
     private static final String SELECTED_FILE = "selected_file";
     private static final String SELECTED_FILE_DEFAULT = ALL_FILES;
@@ -57,26 +87,78 @@ public class FXMLDocumentController implements Initializable {
     private static final String SHOW_FILE_COLUMN = "show_file_column";
     private static final Boolean SHOW_FILE_COLUMN_DEFAULT = true;
 
+    private static final String TARGET_LOCALE = "target_locale";
+    private static final String TARGET_LOCALE_DEFAULT = "";
+
+    private static final int SEARCH_LIMIT = 1000;
+
+    private static final int SUGGESTIONS_LIMIT = 5;
+
+    private static final KeyCombination UNDO = KeyCombination.keyCombination("Shortcut+Z");
+    private static final KeyCombination REDO = KeyCombination.keyCombination("Shortcut+Y");
+
+    private static final String AUTOSAVE_DELAY = "autosave_delay";
+    private static final long AUTOSAVE_DELAY_DEFAULT = 2000;
+
     private ObservableList<TranslationString> data;
-    private FilteredList<TranslationString> filteredData;
+    private ObservableList<TranslationString> filteredData;
+    private Predicate<TranslationString> filter;
+    private Supplier<List<TranslationString>> filterRows;
+    private TranslationIndex index;
+    private RowFilter rowFilter;
+    private LocaleAlignment alignment;
+    private ConsistencyIndex consistency;
+    private TranslationValidator validator;
+    private RowSorter rowSorter;
+    private boolean showingSorted = false;
+    private final Map<TableColumn<TranslationString, ?>, Function<TranslationString, String>> sortValues = new HashMap<>();
+    private TranslationMemory memory;
     private Preferences prefs;
+    private AutoSaver autoSaver;
+    private EditJournal journal;
+    private FileWatcher fileWatcher;
 
     private String lastSelectedFile;
+    private final AtomicBoolean metricsRefreshPending = new AtomicBoolean();
     
     @FXML
     private ComboBox filesComboBox;
     @FXML
+    private ComboBox<String> localeComboBox;
+    @FXML
     private TableView<TranslationString> table;
     @FXML
     private TableColumn<TranslationString, String> nameTCol;
     @FXML
+    private TableColumn<TranslationString, String> sourceTCol;
+    @FXML
     private TableColumn<TranslationString, String> textTCol;
     @FXML
+    private TableColumn<TranslationString, String> statusTCol;
+    @FXML
+    private TableColumn<TranslationString, String> problemTCol;
+    @FXML
     private TableColumn<TranslationString, String> fileTCol;
     @FXML
     private TextField nameTextField;
     @FXML
+    private TextField searchTextField;
+    @FXML
     private CheckBox showFileColumnCheckBox;
+    @FXML
+    private Label statusLabel;
+    @FXML
+    private Button undoButton;
+    @FXML
+    private Button redoButton;
+    @FXML
+    private CheckBox metricsCheckBox;
+    @FXML
+    private HBox metricsPane;
+    @FXML
+    private TextArea metricsTextArea;
+    @FXML
+    private ListView<TranslationMemory.Suggestion> suggestionsListView;
     
     /**
      * @return Currently selected file.
@@ -101,13 +183,9 @@ public class FXMLDocumentController implements Initializable {
         // Initialize user preferences
         prefs = Preferences.userNodeForPackage(com.ondrejd.FXMLDocumentController.class);
 
-        // Set up months combobox
-        ObservableList<String> files = FXCollections.observableArrayList(
-                ALL_FILES,
-                "Ethwork/strings.xml",
-                "Intrace/strings.xml",
-                "Qute/strings.xml",
-                "WebTools/strings.xml");
+        // Set up files combobox
+        ObservableList<String> files = FXCollections.observableArrayList(ALL_FILES, INCONSISTENT);
+        files.addAll(XmlDataSource.getFileNames());
         filesComboBox.setItems(files);
         filesComboBox.getSelectionModel().selectLast();
 
@@ -122,20 +200,77 @@ public class FXMLDocumentController implements Initializable {
         // Restore if file column is shown
         showFileColumnCheckBox.setSelected(showFileColumn);
 
-        // Load data
+        // Load data (table is filled progressively file by file)
+        XmlDataSource.getLoadingFiles().addListener((ListChangeListener.Change<? extends String> c) -> {
+            updateStatus();
+            // Statuses of already shown rows may change with every loaded file
+            table.refresh();
+            if(XmlDataSource.getLoadingFiles().isEmpty()) {
+                handleDataLoaded();
+            }
+        });
+        memory = new TranslationMemory();
+        journal = new EditJournal(XmlDataSource.getWorkspace());
         data = XmlDataSource.load();
+        index = new TranslationIndex(data);
+        rowFilter = new RowFilter(data);
+        rowSorter = new RowSorter(data, SORT_LOCALE);
+        alignment = new LocaleAlignment(data);
+        consistency = new ConsistencyIndex(data, alignment);
+        validator = new TranslationValidator(data, alignment);
+        updateStatus();
+        autoSaver = new AutoSaver(data, journal, prefs.getLong(AUTOSAVE_DELAY, AUTOSAVE_DELAY_DEFAULT), this::handleSaveFailed);
+        // Merge changes made to files by other programs
+        fileWatcher = new FileWatcher(XmlDataSource.getXmlFiles(), file -> {
+            XmlDataSource.reload(file, conflicts -> handleFileReloaded(file, conflicts));
+        });
+        fileWatcher.start();
+
+        // Set up target locale combobox
+        ObservableList<String> locales = FXCollections.observableArrayList(XmlDataSource.getLocales());
+        locales.remove("");
+        localeComboBox.setItems(locales);
+        localeComboBox.setDisable(locales.isEmpty());
+        String targetLocale = prefs.get(TARGET_LOCALE, TARGET_LOCALE_DEFAULT);
+        if(locales.contains(targetLocale)) {
+            localeComboBox.getSelectionModel().select(targetLocale);
+        } else if(!locales.isEmpty()) {
+            localeComboBox.getSelectionModel().selectFirst();
+        }
+        alignment.setTargetLocale(localeComboBox.getValue());
 
         // Set up data table
+        filteredData = FXCollections.<TranslationString>observableArrayList();
+        // Rows loaded later are added if they pass current filter
+        data.addListener((ListChangeListener.Change<? extends TranslationString> c) -> {
+            while(c.next()) {
+                if(c.wasRemoved()) {
+                    // Lookup in identity set keeps removal a single pass
+                    Set<TranslationString> removed = Collections.newSetFromMap(new IdentityHashMap<>());
+                    removed.addAll(c.getRemoved());
+                    filteredData.removeAll(removed);
+                }
+                if(c.wasAdded() && (rowFilter.isPending() || rowSorter.isPending() || !table.getSortOrder().isEmpty())) {
+                    // Pending result would not contain new rows (and sorted
+                    // rows have to be sorted again)
+                    showRows();
+                } else if(c.wasAdded()) {
+                    List<TranslationString> added = new ArrayList<>();
+                    c.getAddedSubList().forEach(n -> {
+                        if(filter.test(n) && matchesSearch(n)) {
+                            added.add(n);
+                        }
+                    });
+                    filteredData.addAll(added);
+                }
+            }
+        });
         if(selName.isEmpty()) {
             // Filter by file
-            filteredData = new FilteredList<>(data, n -> {
-                return selFile.equals(ALL_FILES) ? true : selFile.equals(n.getFile());
-            });
+            filterByFile(selFile);
         } else {
             // Filter by name
-            filteredData = new FilteredList<>(data, n -> {
-                return selName.equals(n.getName());
-            });
+            filterByName(selName);
             lastSelectedFile = getSelectedFile();
             setSelectedFile(ALL_FILES);
             filesComboBox.setDisable(true);
@@ -144,29 +279,67 @@ public class FXMLDocumentController implements Initializable {
         table.getSelectionModel().setSelectionMode(SelectionMode.SINGLE);
         table.getSelectionModel().setCellSelectionEnabled(true);
         table.setItems(filteredData);
+        table.setRowFactory(t -> new TableRow<TranslationString>() {
+            @Override
+            protected void updateItem(TranslationString item, boolean empty) {
+                super.updateItem(item, empty);
+                getStyleClass().removeAll("conflict", "invalid");
+                if(!empty && item != null && item.isConflict()) {
+                    getStyleClass().add("conflict");
+                } else if(!empty && item != null && validator.getProblem(item) != null) {
+                    getStyleClass().add("invalid");
+                }
+            }
+        });
+        // Rows are sorted in background by language rules
+        table.setSortPolicy(t -> {
+            if(!showingSorted) {
+                showRows();
+            }
+            return true;
+        });
+        searchTextField.textProperty().addListener((observable, oldValue, newValue) -> {
+            showRows();
+        });
+        table.getSelectionModel().selectedItemProperty().addListener((observable, oldValue, newValue) -> {
+            showSuggestions(newValue);
+        });
 
         // Set up data table columns
         nameTCol.setCellValueFactory(new PropertyValueFactory<TranslationString,String>("name"));
+        sourceTCol.setCellValueFactory(n -> new ReadOnlyStringWrapper(alignment.getSourceText(n.getValue())));
         textTCol.setCellValueFactory(new PropertyValueFactory<TranslationString,String>("text"));
         textTCol.setCellFactory(TextFieldTableCell.forTableColumn());
         textTCol.setOnEditCommit(
             new EventHandler<CellEditEvent<TranslationString, String>>() {
                 @Override
                 public void handle(CellEditEvent<TranslationString, String> t) {
-                    TranslationString item = ((TranslationString) t.getTableView().getItems().get(
-                        t.getTablePosition().getRow())
-                    );
+                    TranslationString item = t.getRowValue();
                     if(item.isTranslatable().equals(true)) {
-                        item.setText(t.getNewValue());
+                        applyTranslation(item, t.getNewValue());
                     } else {
                         item.setText(t.getOldValue());
+                        t.getTableView().refresh();
                     }
-                    t.getTableView().refresh();
                 }
             }
         );
+        statusTCol.setCellValueFactory(n -> new ReadOnlyStringWrapper(Objects.toString(alignment.getStatus(n.getValue()), "")));
+        problemTCol.setCellValueFactory(n -> new ReadOnlyStringWrapper(validator.getProblem(n.getValue())));
         fileTCol.setCellValueFactory(new PropertyValueFactory<TranslationString,String>("file"));
         fileTCol.setVisible(showFileColumn());
+        sortValues.put(nameTCol, TranslationString::getName);
+        sortValues.put(sourceTCol, alignment::getSourceText);
+        sortValues.put(textTCol, TranslationString::getText);
+        sortValues.put(statusTCol, n -> Objects.toString(alignment.getStatus(n), ""));
+        sortValues.put(problemTCol, validator::getProblem);
+        sortValues.put(fileTCol, TranslationString::getFile);
+
+        updateUndoButtons();
+        // There may be no files to load at all
+        if(XmlDataSource.getLoadingFiles().isEmpty()) {
+            handleDataLoaded();
+        }
 
         // Focus table
         focusTable();
@@ -183,13 +356,20 @@ public class FXMLDocumentController implements Initializable {
      * Save data to XML file - called from {@link ondrejd.Costs}.
      */
     public void saveData() {
-        // Save data
-        XmlDataSource.save(data);
+        fileWatcher.stop();
+        Metrics.setListener(null);
+        // Save data (in background, pending autosave is flushed and the
+        // journal is closed after it)
+        autoSaver.close();
+        memory.close();
         // Save user preferences
         try {
             prefs.put(SELECTED_FILE, getSelectedFile());
             prefs.put(SELECTED_NAME, nameTextField.getText());
             prefs.putBoolean(SHOW_FILE_COLUMN, showFileColumn());
+            if(localeComboBox.getValue() != null) {
+                prefs.put(TARGET_LOCALE, localeComboBox.getValue());
+            }
             prefs.flush();
         } catch(BackingStoreException e) {
             //e.printStackTrace();
@@ -197,6 +377,215 @@ public class FXMLDocumentController implements Initializable {
         }
     }
     
+    /**
+     * Update status label with files which are still loading.
+     */
+    private void updateStatus() {
+        ObservableList<String> loading = XmlDataSource.getLoadingFiles();
+        if(loading.isEmpty()) {
+            int inconsistent = consistency == null ? 0 : consistency.getInconsistentCount();
+            int invalid = validator == null ? 0 : validator.getProblemCount();
+            List<String> status = new ArrayList<>();
+            if(XmlDataSource.getWorkspace() == null) {
+                status.add("Není nastaven pracovní adresář (spusťte aplikaci s --workspace=DIR)");
+            }
+            if(inconsistent > 0) {
+                status.add(INCONSISTENT + ": " + inconsistent);
+            }
+            if(invalid > 0) {
+                status.add(INVALID + ": " + invalid);
+            }
+            statusLabel.setText(String.join(", ", status));
+        } else if(loading.size() <= 3) {
+            statusLabel.setText("Načítám: " + String.join(", ", loading));
+        } else {
+            statusLabel.setText("Načítám: " + loading.get(0) + " a dalších " + (loading.size() - 1) + " souborů");
+        }
+    }
+
+    /**
+     * Called when file changed on disk was merged into data.
+     * @param file
+     * @param conflicts Count of rows with unsaved changes which were changed on disk too.
+     */
+    private void handleFileReloaded(File file, Integer conflicts) {
+        String fileName = XmlDataSource.getFileName(file);
+        // Texts changed on disk have to be searchable
+        index.getByFile(fileName).forEach(n -> {
+            rowFilter.update(n);
+            alignment.update(n);
+            consistency.update(n);
+            validator.validate(n);
+        });
+        memory.addAll(getMemoryEntries(index.getByFile(fileName)));
+
+        String message = "Soubor " + fileName + " byl změněn na disku";
+        if(conflicts > 0) {
+            message += " (konflikty: " + conflicts + ")";
+        }
+        statusLabel.setText(message);
+        table.refresh();
+    }
+
+    /**
+     * Called on writer thread when file was not saved. File changed on disk
+     * is merged first (edited rows become conflicts) and saved again.
+     * @param snapshot
+     */
+    private void handleSaveFailed(XmlDataSource.FileSnapshot snapshot) {
+        File file = snapshot.getFile();
+        String fileName = XmlDataSource.getFileName(file);
+        if(snapshot.isConflict()) {
+            XmlDataSource.reload(file, conflicts -> {
+                handleFileReloaded(file, conflicts);
+                autoSaver.schedule();
+            });
+        } else {
+            Platform.runLater(() -> statusLabel.setText("Soubor " + fileName + " se nepodařilo uložit"));
+        }
+    }
+
+    /**
+     * Sets new translation of row (journaled so it can be undone).
+     * @param item
+     * @param text
+     */
+    private void applyTranslation(TranslationString item, String text) {
+        long start = Metrics.start();
+        if(!text.equals(item.getText())) {
+            journal.record(item, item.getText(), text);
+        }
+        updateTranslation(item, text);
+        Metrics.record(Metrics.Kind.EDIT, start, -1, 1, item.getName());
+    }
+
+    /**
+     * Sets text of row and updates everything what depends on it.
+     * @param item
+     * @param text
+     */
+    private void updateTranslation(TranslationString item, String text) {
+        updateRow(item, text);
+        table.refresh();
+        updateStatus();
+        memory.addAll(getMemoryEntries(Collections.singletonList(item)));
+        autoSaver.schedule();
+        updateUndoButtons();
+    }
+
+    /**
+     * Sets text of row and updates indexes (without refreshing the view).
+     * @param item
+     * @param text
+     */
+    private void updateRow(TranslationString item, String text) {
+        item.setText(text);
+        item.setConflict(false);
+        rowFilter.update(item);
+        alignment.update(item);
+        consistency.update(item);
+        validator.validate(item);
+    }
+
+    /**
+     * Remembers translations, checks them and replays unsaved edits once
+     * all files are loaded.
+     */
+    private void handleDataLoaded() {
+        // Translations are remembered once all files are aligned
+        memory.addAll(getMemoryEntries(data));
+        validator.validateAll(data, () -> {
+            updateStatus();
+            table.refresh();
+        });
+        recoverEdits();
+    }
+
+    /**
+     * Replays edits which were not saved in the previous session (e.g.
+     * because the application crashed).
+     */
+    private void recoverEdits() {
+        int recovered = 0;
+        for(EditJournal.Edit edit : journal.getRecovered()) {
+            for(TranslationString row : index.getByName(edit.getName())) {
+                // Edit is replayed only over the text it was made to
+                if(row.getFile().equals(edit.getFile()) && row.isTranslatable() && row.getText().equals(edit.getOldText())) {
+                    updateTranslation(row, edit.getNewText());
+                    recovered++;
+                    break;
+                }
+            }
+        }
+
+        if(recovered == 0) {
+            journal.discardRecovered();
+        } else {
+            statusLabel.setText("Obnoveno neuložených změn: " + recovered);
+        }
+    }
+
+    /**
+     * @param row
+     * @return Returns TRUE if row was not removed from data.
+     */
+    private boolean isLoaded(TranslationString row) {
+        return index.getByName(row.getName()).contains(row);
+    }
+
+    /**
+     * Enables undo and redo buttons according to journal.
+     */
+    private void updateUndoButtons() {
+        undoButton.setDisable(!journal.canUndo());
+        redoButton.setDisable(!journal.canRedo());
+    }
+
+    /**
+     * @param rows
+     * @return Source text, translation, locale, file and name of rows for
+     *         translation memory.
+     */
+    private List<String[]> getMemoryEntries(Collection<TranslationString> rows) {
+        List<String[]> entries = new ArrayList<>(rows.size());
+        rows.forEach(n -> {
+            if(n.isTranslatable()) {
+                // Rows without source string are remembered by their own text
+                String source = alignment.getSourceText(n);
+                entries.add(new String[] {
+                    source == null ? n.getText() : source,
+                    n.getText(),
+                    LocaleAlignment.getLocale(n),
+                    n.getFile(),
+                    n.getName()
+                });
+            }
+        });
+
+        return entries;
+    }
+
+    /**
+     * Looks up suggestions for row in translation memory (in background).
+     * @param row
+     */
+    private void showSuggestions(TranslationString row) {
+        suggestionsListView.getItems().clear();
+        if(row == null || !row.isTranslatable()) {
+            memory.cancel();
+            return;
+        }
+
+        String source = alignment.getSourceText(row);
+        memory.suggest(
+            source == null ? row.getText() : source,
+            LocaleAlignment.getLocale(row),
+            row.getText(),
+            SUGGESTIONS_LIMIT,
+            suggestionsListView.getItems()::setAll
+        );
+    }
+
     /**
      * Set table on focus.
      */
@@ -213,19 +602,89 @@ public class FXMLDocumentController implements Initializable {
      */
     private void filterByFile(String fileName) {
         setSelectedFile(fileName);
-        filteredData.setPredicate(n -> {
-            return fileName.equals(ALL_FILES) ? true : fileName.equals(n.getFile());
-        });
+        if(fileName.equals(ALL_FILES)) {
+            filter = n -> true;
+            filterRows = () -> data;
+        } else if(fileName.equals(INCONSISTENT)) {
+            filter = consistency::isInconsistent;
+            filterRows = consistency::getInconsistentRows;
+        } else {
+            filter = n -> fileName.equals(n.getFile());
+            filterRows = () -> index.getByFile(fileName);
+        }
+        showRows();
     }
     
     /**
      * @param name 
      */
     private void filterByName(String name) {
-        filteredData.setPredicate(n -> {
-            return name.equals(n.getName());
+        filter = n -> name.equals(n.getName());
+        filterRows = () -> index.getByName(name);
+        showRows();
+    }
+
+    /**
+     * @return Search query (empty if search is not used).
+     */
+    private String getSearchQuery() {
+        String query = searchTextField.getText();
+        return query == null ? "" : query.trim();
+    }
+
+    /**
+     * @param row
+     * @return Returns TRUE if row matches search query (or there is no query).
+     */
+    private boolean matchesSearch(TranslationString row) {
+        String query = getSearchQuery();
+        return query.isEmpty() || SearchIndex.matches(row, query);
+    }
+
+    /**
+     * Shows rows matching current filter and search query in the table.
+     * Rows are computed in background and swapped into the table at once.
+     */
+    private void showRows() {
+        long start = Metrics.start();
+        String query = getSearchQuery();
+        List<TranslationString> rows = filterRows.get();
+        rowFilter.filter(rows, rows == data, query, SEARCH_LIMIT, result -> {
+            Metrics.record(Metrics.Kind.FILTER, start, -1, result.size(), query.isEmpty() ? getSelectedFile() : query);
+            List<RowSorter.Column> order = getSortColumns();
+            if(order.isEmpty()) {
+                rowSorter.cancel();
+                filteredData.setAll(result);
+                return;
+            }
+
+            long sortStart = Metrics.start();
+            String column = table.getSortOrder().get(0).getText();
+            rowSorter.sort(result, order, sorted -> {
+                // Sorted rows must not trigger sorting again
+                showingSorted = true;
+                filteredData.setAll(sorted);
+                showingSorted = false;
+                Metrics.record(Metrics.Kind.SORT, sortStart, -1, sorted.size(), column);
+            });
         });
     }
+
+    /**
+     * @return Columns of table sort order.
+     */
+    private List<RowSorter.Column> getSortColumns() {
+        List<RowSorter.Column> order = new ArrayList<>();
+        for(TableColumn<TranslationString, ?> column : table.getSortOrder()) {
+            Function<TranslationString, String> value = sortValues.get(column);
+            if(value != null) {
+                boolean descending = column.getSortType() == TableColumn.SortType.DESCENDING;
+                order.add(new RowSorter.Column(table.getColumns().indexOf(column), value, descending));
+            }
+        }
+
+        return order;
+    }
     
     @FXML
     private void handleFilesComboBoxAction(ActionEvent event) {
@@ -233,6 +692,13 @@ public class FXMLDocumentController implements Initializable {
         focusTable();
     }
 
+    @FXML
+    private void handleLocaleComboBoxAction(ActionEvent event) {
+        alignment.setTargetLocale(localeComboBox.getValue());
+        table.refresh();
+        focusTable();
+    }
+
     @FXML
     private void handleFilterByNameAction(ActionEvent event) {
         TranslationString row = table.getSelectionModel().getSelectedItem();
@@ -270,5 +736,183 @@ public class FXMLDocumentController implements Initializable {
     private void handleShowFileColumnCheckBox(ActionEvent event) {
         fileTCol.setVisible(showFileColumn());
     }
+
+    @FXML
+    private void handleUndoAction(ActionEvent event) {
+        EditJournal.Edit edit = journal.undo();
+        if(edit != null && isLoaded(edit.getRow())) {
+            updateTranslation(edit.getRow(), edit.getOldText());
+        }
+        updateUndoButtons();
+        focusTable();
+    }
+
+    @FXML
+    private void handleRedoAction(ActionEvent event) {
+        EditJournal.Edit edit = journal.redo();
+        if(edit != null && isLoaded(edit.getRow())) {
+            updateTranslation(edit.getRow(), edit.getNewText());
+        }
+        updateUndoButtons();
+        focusTable();
+    }
+
+    @FXML
+    private void handleExportAction(ActionEvent event) {
+        FileChooser chooser = newExchangeChooser("Export zobrazených překladů");
+        chooser.setInitialFileName("translations");
+        File file = chooser.showSaveDialog(table.getScene().getWindow());
+        if(file == null) {
+            return;
+        }
+
+        TranslationExchange.Format format = getExchangeFormat(chooser.getSelectedExtensionFilter());
+        String extension = format.getExtension().substring(1);
+        if(!file.getName().toLowerCase().endsWith(extension)) {
+            file = new File(file.getPath() + extension);
+        }
+        statusLabel.setText("Exportuji překlady…");
+        Path target = file.toPath();
+        // Shown rows are limited when search is used - all found rows are exported
+        List<TranslationString> rows = filterRows.get();
+        rowFilter.findAll(rows, rows == data, getSearchQuery(), found -> {
+            TranslationExchange.export(found, data, target, format, count -> {
+                statusLabel.setText(count < 0 ? "Export se nezdařil" : "Exportováno překladů: " + count);
+            });
+        });
+    }
+
+    @FXML
+    private void handleImportAction(ActionEvent event) {
+        File file = newExchangeChooser("Import překladů").showOpenDialog(table.getScene().getWindow());
+        if(file == null) {
+            return;
+        }
+
+        // Imported translations are journaled like edits, the view is
+        // refreshed once at the end
+        List<TranslationString> imported = new ArrayList<>();
+        statusLabel.setText("Importuji překlady…");
+        TranslationExchange.importFile(file.toPath(), data, (row, text) -> {
+            if(!text.equals(row.getText())) {
+                journal.record(row, row.getText(), text);
+                updateRow(row, text);
+                imported.add(row);
+            }
+        }, count -> {
+            table.refresh();
+            updateStatus();
+            memory.addAll(getMemoryEntries(imported));
+            autoSaver.schedule();
+            updateUndoButtons();
+            statusLabel.setText(count < 0 ? "Import se nezdařil" : "Importováno překladů: " + imported.size());
+        });
+    }
+
+    /**
+     * @param title
+     * @return File chooser with filters of exchange formats.
+     */
+    private FileChooser newExchangeChooser(String title) {
+        FileChooser chooser = new FileChooser();
+        chooser.setTitle(title);
+        for(TranslationExchange.Format format : TranslationExchange.Format.values()) {
+            chooser.getExtensionFilters().add(new FileChooser.ExtensionFilter(format.toString(), format.getExtension()));
+        }
+        return chooser;
+    }
+
+    /**
+     * @param filter Selected filter of file chooser.
+     * @return Format
+     */
+    private TranslationExchange.Format getExchangeFormat(FileChooser.ExtensionFilter filter) {
+        for(TranslationExchange.Format format : TranslationExchange.Format.values()) {
+            if(filter != null && format.toString().equals(filter.getDescription())) {
+                return format;
+            }
+        }
+        return TranslationExchange.Format.XLIFF_12;
+    }
+
+    @FXML
+    private void handleTableKeyPressed(KeyEvent event) {
+        // Text field of edited cell has its own undo
+        if(table.getEditingCell() != null) {
+            return;
+        }
+
+        if(UNDO.match(event)) {
+            handleUndoAction(null);
+            event.consume();
+        } else if(REDO.match(event)) {
+            handleRedoAction(null);
+            event.consume();
+        }
+    }
+
+    @FXML
+    private void handleMetricsCheckBox(ActionEvent event) {
+        boolean show = metricsCheckBox.isSelected();
+        metricsPane.setVisible(show);
+        metricsPane.setManaged(show);
+        // Metrics are formatted only while the panel is shown
+        if(show) {
+            Metrics.setListener(() -> {
+                if(metricsRefreshPending.compareAndSet(false, true)) {
+                    Platform.runLater(this::refreshMetrics);
+                }
+            });
+            refreshMetrics();
+        } else {
+            Metrics.setListener(null);
+        }
+    }
+
+    @FXML
+    private void handleMetricsReportAction(ActionEvent event) {
+        String name = "metrics-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".csv";
+        Path report = Paths.get(System.getProperty("user.home"), ".webtools-trans-helper", name);
+        try {
+            Files.createDirectories(report.getParent());
+            Metrics.writeReport(report);
+            statusLabel.setText("Report uložen: " + report);
+        } catch(IOException ioe) {
+            ioe.printStackTrace();
+            statusLabel.setText("Report se nepodařilo uložit");
+        }
+    }
+
+    /**
+     * Shows summary and the last operations in metrics panel.
+     */
+    private void refreshMetrics() {
+        metricsRefreshPending.set(false);
+        StringBuilder text = new StringBuilder();
+        Metrics.getSummary().forEach(n -> text.append(n).append('\n'));
+        List<Metrics.Sample> samples = Metrics.getSamples();
+        // Newest first
+        for(int i = samples.size() - 1; i >= 0; i--) {
+            Metrics.Sample sample = samples.get(i);
+            text.append(String.format("%n%-18s %9.1f ms %8s řádků  %s", sample.getKind(), sample.getMillis(),
+                    sample.getRows() < 0 ? "-" : sample.getRows(), sample.getDetail()));
+        }
+        metricsTextArea.setText(text.toString());
+    }
+
+    @FXML
+    private void handleSuggestionsClicked(MouseEvent event) {
+        if(event.getClickCount() != 2) {
+            return;
+        }
+
+        TranslationString row = table.getSelectionModel().getSelectedItem();
+        TranslationMemory.Suggestion suggestion = suggestionsListView.getSelectionModel().getSelectedItem();
+        if(row != null && suggestion != null && row.isTranslatable()) {
+            applyTranslation(row, suggestion.getText());
+            showSuggestions(row);
+        }
+        focusTable();
+    }
     
 }
@@ -0,0 +1,116 @@
+/**
+ * @author Ondřej Doněk <ondrejd@gmail.com>
+ * @link https://github.com/ondrejd/webtools-trans-helper for the canonical source repository
+ * @license https://www.gnu.org/licenses/gpl-3.0.en.html GNU General Public License 3.0
+ */
+
+package com.ondrejd;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Watches XML files for changes made by other programs.
+ *
+ * Directories of the files are registered in {@link WatchService}. Events
+ * are collected until the files are quiet for a moment (editors and git
+ * often write a file in several steps) and then each changed file is
+ * reported once. Listener is called on the watcher thread.
+ */
+public class FileWatcher implements Runnable {
+    private static final long QUIET_PERIOD = 300;
+
+    private final Set<Path> files = new HashSet<>();
+    private final Map<WatchKey, Path> dirs = new HashMap<>();
+    private final Consumer<File> onChange;
+    private WatchService service;
+
+    /**
+     * Constructor
+     * @param paths Paths of watched files.
+     * @param onChange Called with file which was changed.
+     */
+    public FileWatcher(List<String> paths, Consumer<File> onChange) {
+        this.onChange = onChange;
+        paths.forEach(n -> files.add(Paths.get(n).toAbsolutePath()));
+    }
+
+    /**
+     * Starts watching in background thread.
+     */
+    public void start() {
+        try {
+            service = FileSystems.getDefault().newWatchService();
+            for(Path file : files) {
+                Path dir = file.getParent();
+                if(dir.toFile().isDirectory() && !dirs.containsValue(dir)) {
+                    dirs.put(dir.register(service,
+                            StandardWatchEventKinds.ENTRY_CREATE,
+                            StandardWatchEventKinds.ENTRY_MODIFY), dir);
+                }
+            }
+        } catch(IOException ioe) {
+            ioe.printStackTrace();
+            return;
+        }
+
+        Thread thread = new Thread(this, "file-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops watching.
+     */
+    public void stop() {
+        try {
+            if(service != null) {
+                service.close();
+            }
+        } catch(IOException ioe) {
+            ioe.printStackTrace();
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            while(true) {
+                Set<Path> changed = new LinkedHashSet<>();
+                // Wait for the first change, then collect others until it is quiet
+                for(WatchKey key = service.take(); key != null; key = service.poll(QUIET_PERIOD, TimeUnit.MILLISECONDS)) {
+                    Path dir = dirs.get(key);
+                    for(WatchEvent<?> event : key.pollEvents()) {
+                        if(dir != null && event.context() instanceof Path) {
+                            Path file = dir.resolve((Path) event.context());
+                            if(files.contains(file)) {
+                                changed.add(file);
+                            }
+                        }
+                    }
+                    key.reset();
+                }
+
+                changed.forEach(n -> onChange.accept(n.toFile()));
+            }
+        } catch(InterruptedException | ClosedWatchServiceException e) {
+            // Watching stopped
+        }
+    }
+}
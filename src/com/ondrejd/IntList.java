@@ -0,0 +1,83 @@
+/**
+ * @author Ondřej Doněk <ondrejd@gmail.com>
+ * @link https://github.com/ondrejd/webtools-trans-helper for the canonical source repository
+ * @license https://www.gnu.org/licenses/gpl-3.0.en.html GNU General Public License 3.0
+ */
+
+package com.ondrejd;
+
+import java.util.Arrays;
+
+/**
+ * Sorted list of unique ints.
+ */
+class IntList {
+    private int[] values = new int[2];
+    private int size = 0;
+
+    /**
+     * @return Count of values.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @param index
+     * @return Value at given position.
+     */
+    int get(int index) {
+        return values[index];
+    }
+
+    /**
+     * @return Copy of values.
+     */
+    int[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+
+    /**
+     * @param value
+     * @return Returns TRUE if list contains value.
+     */
+    boolean contains(int value) {
+        return Arrays.binarySearch(values, 0, size, value) >= 0;
+    }
+
+    /**
+     * @param value
+     */
+    void add(int value) {
+        // Rows are mostly added with increasing ids
+        if(size > 0 && values[size - 1] == value) {
+            return;
+        }
+
+        int pos = size > 0 && values[size - 1] < value ? -(size + 1) : Arrays.binarySearch(values, 0, size, value);
+        if(pos >= 0) {
+            return;
+        }
+
+        pos = -(pos + 1);
+        if(size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        System.arraycopy(values, pos, values, pos + 1, size - pos);
+        values[pos] = value;
+        size++;
+    }
+
+    /**
+     * @param value
+     */
+    void remove(int value) {
+        int pos = Arrays.binarySearch(values, 0, size, value);
+        if(pos < 0) {
+            return;
+        }
+
+        System.arraycopy(values, pos + 1, values, pos, size - pos - 1);
+        size--;
+    }
+}
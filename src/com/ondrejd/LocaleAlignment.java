@@ -0,0 +1,266 @@
+/**
+ * @author Ondřej Doněk <ondrejd@gmail.com>
+ * @link https://github.com/ondrejd/webtools-trans-helper for the canonical source repository
+ * @license https://www.gnu.org/licenses/gpl-3.0.en.html GNU General Public License 3.0
+ */
+
+package com.ondrejd;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+
+/**
+ * Aligns translations with strings of source (default) locale.
+ *
+ * Strings of <code>res/values-xx/strings.xml</code> are joined by name with
+ * strings of <code>res/values/strings.xml</code> of the same module using
+ * hash maps. Status of each translated string is kept and updated only for
+ * rows affected by a change (edit of source text updates its translations
+ * only).
+ */
+public class LocaleAlignment {
+    /**
+     * Status of string.
+     */
+    public enum Status {
+        TRANSLATED("Přeloženo"),
+        MISSING("Chybí překlad"),
+        IDENTICAL("Shodné se zdrojem"),
+        ORPHANED("Chybí zdroj");
+
+        private final String label;
+
+        Status(String label) {
+            this.label = label;
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    private final Map<String, TranslationString> sources = new HashMap<>();
+    private final Map<String, List<TranslationString>> targets = new HashMap<>();
+    private final Map<TranslationString, Status> statuses = new IdentityHashMap<>();
+    private String targetLocale = "";
+
+    /**
+     * Constructor
+     * @param data Data rows.
+     */
+    public LocaleAlignment(ObservableList<TranslationString> data) {
+        data.forEach(this::add);
+        data.addListener((ListChangeListener.Change<? extends TranslationString> c) -> {
+            while(c.next()) {
+                if(c.wasRemoved()) {
+                    c.getRemoved().forEach(this::remove);
+                }
+                if(c.wasAdded()) {
+                    c.getAddedSubList().forEach(this::add);
+                }
+            }
+        });
+    }
+
+    /**
+     * @param row
+     * @return Locale of row ("" for source locale) or NULL if row is not
+     *         from Android values directory of a locale.
+     */
+    public static String getLocale(TranslationString row) {
+        return WorkspaceScanner.getLocale(getDir(row.getFile()));
+    }
+
+    /**
+     * @param file
+     * @return Name of parent directory of file.
+     */
+    private static String getDir(String file) {
+        int end = file.lastIndexOf('/');
+        if(end < 0) {
+            return "";
+        }
+
+        return file.substring(file.lastIndexOf('/', end - 1) + 1, end);
+    }
+
+    /**
+     * @param row
+     * @return Join key - module (path to values directory) and name.
+     */
+    static String getKey(TranslationString row) {
+        String file = row.getFile();
+        int end = file.lastIndexOf('/');
+        String module = file.substring(0, Math.max(0, file.lastIndexOf('/', end - 1) + 1));
+        return module + '\u0000' + row.getName();
+    }
+
+    /**
+     * Missing translations of source strings are reported for this locale.
+     * @param locale
+     */
+    public void setTargetLocale(String locale) {
+        targetLocale = locale == null ? "" : locale;
+        sources.values().forEach(this::updateStatus);
+    }
+
+    /**
+     * @param row
+     * @return Status of row or NULL (e.g. row is not in values directory).
+     */
+    public Status getStatus(TranslationString row) {
+        return statuses.get(row);
+    }
+
+    /**
+     * @param row
+     * @return Text in source locale or NULL if there is none.
+     */
+    public String getSourceText(TranslationString row) {
+        if(!isTarget(row)) {
+            return null;
+        }
+
+        TranslationString source = sources.get(getKey(row));
+        return source == null ? null : source.getText();
+    }
+
+    /**
+     * @param row
+     * @return Translations of row (if row is in source locale).
+     */
+    public List<TranslationString> getTranslations(TranslationString row) {
+        if(isTarget(row)) {
+            return Collections.emptyList();
+        }
+
+        return targets.getOrDefault(getKey(row), Collections.emptyList());
+    }
+
+    /**
+     * Updates statuses after text of row was edited.
+     * @param row
+     */
+    public void update(TranslationString row) {
+        String locale = getLocale(row);
+        if(locale == null) {
+            return;
+        }
+
+        updateStatus(row);
+        updateRelated(row);
+    }
+
+    /**
+     * Updates statuses of rows joined with given row (translations of source
+     * string or source string of translation).
+     * @param row
+     */
+    private void updateRelated(TranslationString row) {
+        String key = getKey(row);
+        if(isTarget(row)) {
+            TranslationString source = sources.get(key);
+            if(source != null) {
+                updateStatus(source);
+            }
+        } else {
+            targets.getOrDefault(key, Collections.emptyList()).forEach(this::updateStatus);
+        }
+    }
+
+    /**
+     * @param row
+     * @return Returns TRUE if row is translation (not in source locale).
+     */
+    private static boolean isTarget(TranslationString row) {
+        String locale = getLocale(row);
+        return locale != null && !locale.isEmpty();
+    }
+
+    /**
+     * @param row
+     */
+    private void add(TranslationString row) {
+        String locale = getLocale(row);
+        if(locale == null) {
+            return;
+        }
+
+        String key = getKey(row);
+        if(locale.isEmpty()) {
+            sources.put(key, row);
+        } else {
+            targets.computeIfAbsent(key, k -> new ArrayList<>()).add(row);
+        }
+        update(row);
+    }
+
+    /**
+     * @param row
+     */
+    private void remove(TranslationString row) {
+        String locale = getLocale(row);
+        if(locale == null) {
+            return;
+        }
+
+        String key = getKey(row);
+        statuses.remove(row);
+        if(locale.isEmpty()) {
+            if(sources.get(key) == row) {
+                sources.remove(key);
+            }
+        } else {
+            List<TranslationString> rows = targets.get(key);
+            if(rows != null) {
+                rows.remove(row);
+                if(rows.isEmpty()) {
+                    targets.remove(key);
+                }
+            }
+        }
+        updateRelated(row);
+    }
+
+    /**
+     * Computes status of single row.
+     * @param row
+     */
+    private void updateStatus(TranslationString row) {
+        String key = getKey(row);
+
+        if(!isTarget(row)) {
+            // Source string - is it translated to target locale?
+            boolean translated = targetLocale.isEmpty();
+            for(TranslationString target : targets.getOrDefault(key, Collections.emptyList())) {
+                if(targetLocale.equals(getLocale(target)) && !target.getText().isEmpty()) {
+                    translated = true;
+                }
+            }
+            if(!row.isTranslatable() || translated) {
+                statuses.remove(row);
+            } else {
+                statuses.put(row, Status.MISSING);
+            }
+            return;
+        }
+
+        TranslationString source = sources.get(key);
+        if(source == null) {
+            statuses.put(row, Status.ORPHANED);
+        } else if(row.getText().isEmpty()) {
+            statuses.put(row, Status.MISSING);
+        } else if(row.getText().equals(source.getText()) && row.isTranslatable()) {
+            statuses.put(row, Status.IDENTICAL);
+        } else {
+            statuses.put(row, Status.TRANSLATED);
+        }
+    }
+}
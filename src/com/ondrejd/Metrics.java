@@ -0,0 +1,235 @@
+/**
+ * @author Ondřej Doněk <ondrejd@gmail.com>
+ * @link https://github.com/ondrejd/webtools-trans-helper for the canonical source repository
+ * @license https://www.gnu.org/licenses/gpl-3.0.en.html GNU General Public License 3.0
+ */
+
+package com.ondrejd;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Timing of loading, saving, filtering, sorting, editing and exchange of
+ * translations.
+ *
+ * For every kind of operation count, total and maximal time are kept
+ * together with a ring of the last samples. Recording a sample costs two
+ * calls of {@link System#nanoTime()} and a short synchronized block;
+ * samples are formatted only when somebody reads them (metrics panel or
+ * report).
+ */
+public class Metrics {
+    /**
+     * Kind of measured operation.
+     */
+    public enum Kind {
+        LOAD("Načtení souboru"),
+        CACHE("Načtení z cache"),
+        SAVE("Uložení souboru"),
+        BACKUP("Záloha souboru"),
+        FILTER("Filtrování"),
+        SORT("Řazení"),
+        EDIT("Úprava překladu"),
+        EXPORT("Export překladů"),
+        IMPORT("Import překladů");
+
+        private final String label;
+
+        Kind(String label) {
+            this.label = label;
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    /**
+     * Single measured operation.
+     */
+    public static class Sample {
+        private final Kind kind;
+        private final long time;
+        private final long nanos;
+        private final long bytes;
+        private final int rows;
+        private final String detail;
+
+        private Sample(Kind kind, long time, long nanos, long bytes, int rows, String detail) {
+            this.kind = kind;
+            this.time = time;
+            this.nanos = nanos;
+            this.bytes = bytes;
+            this.rows = rows;
+            this.detail = detail;
+        }
+
+        /**
+         * @return Kind
+         */
+        public Kind getKind() {
+            return kind;
+        }
+
+        /**
+         * @return Time when operation finished (in milliseconds since epoch).
+         */
+        public long getTime() {
+            return time;
+        }
+
+        /**
+         * @return Duration in milliseconds.
+         */
+        public double getMillis() {
+            return nanos / 1e6;
+        }
+
+        /**
+         * @return Count of processed bytes (-1 if not known).
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * @return Count of processed rows (-1 if not known).
+         */
+        public int getRows() {
+            return rows;
+        }
+
+        /**
+         * @return Detail (e.g. file name).
+         */
+        public String getDetail() {
+            return detail;
+        }
+    }
+
+    private static final int SAMPLES = 100;
+    private static final Object lock = new Object();
+    private static final long[] counts = new long[Kind.values().length];
+    private static final long[] totals = new long[Kind.values().length];
+    private static final long[] maxima = new long[Kind.values().length];
+    private static final Sample[] samples = new Sample[SAMPLES];
+    private static int next = 0;
+    private static volatile Runnable listener;
+
+    /**
+     * @return Start time of operation (pass it to {@link #record}).
+     */
+    public static long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Records finished operation. Can be called from any thread.
+     * @param kind
+     * @param start Value returned by {@link #start()}.
+     * @param bytes Count of processed bytes (-1 if not known).
+     * @param rows Count of processed rows (-1 if not known).
+     * @param detail Detail (e.g. file name).
+     */
+    public static void record(Kind kind, long start, long bytes, int rows, String detail) {
+        long nanos = System.nanoTime() - start;
+        Sample sample = new Sample(kind, System.currentTimeMillis(), nanos, bytes, rows, detail);
+        synchronized(lock) {
+            int i = kind.ordinal();
+            counts[i]++;
+            totals[i] += nanos;
+            maxima[i] = Math.max(maxima[i], nanos);
+            samples[next] = sample;
+            next = (next + 1) % SAMPLES;
+        }
+
+        Runnable l = listener;
+        if(l != null) {
+            l.run();
+        }
+    }
+
+    /**
+     * @param l Called (on the recording thread) after every recorded
+     *          operation, NULL when nobody is interested.
+     */
+    public static void setListener(Runnable l) {
+        listener = l;
+    }
+
+    /**
+     * @return The last samples (oldest first).
+     */
+    public static List<Sample> getSamples() {
+        List<Sample> result = new ArrayList<>(SAMPLES);
+        synchronized(lock) {
+            for(int i = 0; i < SAMPLES; i++) {
+                Sample sample = samples[(next + i) % SAMPLES];
+                if(sample != null) {
+                    result.add(sample);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * @return Summary of every kind of operation (one line per kind).
+     */
+    public static List<String> getSummary() {
+        List<String> lines = new ArrayList<>();
+        synchronized(lock) {
+            for(Kind kind : Kind.values()) {
+                int i = kind.ordinal();
+                if(counts[i] > 0) {
+                    lines.add(String.format(Locale.ROOT, "%s: %d×, průměr %.1f ms, max %.1f ms",
+                            kind, counts[i], totals[i] / 1e6 / counts[i], maxima[i] / 1e6));
+                }
+            }
+        }
+
+        return lines;
+    }
+
+    /**
+     * Writes summary and the last samples as CSV.
+     * @param file
+     * @throws IOException
+     */
+    public static void writeReport(Path file) throws IOException {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSXXX", Locale.ROOT);
+        long[] c = new long[counts.length];
+        long[] t = new long[totals.length];
+        long[] m = new long[maxima.length];
+        synchronized(lock) {
+            System.arraycopy(counts, 0, c, 0, c.length);
+            System.arraycopy(totals, 0, t, 0, t.length);
+            System.arraycopy(maxima, 0, m, 0, m.length);
+        }
+
+        try(Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write("record,kind,time,count,ms,max_ms,bytes,rows,detail\n");
+            for(Kind kind : Kind.values()) {
+                int i = kind.ordinal();
+                out.write(String.format(Locale.ROOT, "summary,%s,,%d,%.3f,%.3f,,,\n",
+                        kind.name(), c[i], c[i] == 0 ? 0 : t[i] / 1e6 / c[i], m[i] / 1e6));
+            }
+            for(Sample sample : getSamples()) {
+                out.write(String.format(Locale.ROOT, "sample,%s,%s,1,%.3f,,%d,%d,%s\n",
+                        sample.getKind().name(), format.format(new Date(sample.getTime())), sample.getMillis(),
+                        sample.getBytes(), sample.getRows(), CommandLine.csv(sample.getDetail())));
+            }
+        }
+    }
+}
@@ -0,0 +1,670 @@
+/**
+ * @author Ondřej Doněk <ondrejd@gmail.com>
+ * @link https://github.com/ondrejd/webtools-trans-helper for the canonical source repository
+ * @license https://www.gnu.org/licenses/gpl-3.0.en.html GNU General Public License 3.0
+ */
+
+package com.ondrejd;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Revisions of XML files (replaces single <code>.bak</code> copies).
+ *
+ * Content of file is split into chunks at content-defined boundaries
+ * (gear rolling hash), so an edit changes only one or two chunks and the
+ * rest of them is shared with previous revisions. Chunks are addressed by
+ * SHA-1 hash, compressed and appended to a pack file (one per XML file)
+ * together with revision records listing chunks of each revision. Storing
+ * a revision thus writes only changed chunks. When the pack grows over
+ * {@link #MAX_PACK_SIZE} the oldest revisions are dropped and pack is
+ * rewritten with chunks which are still referenced.
+ *
+ * Record: length, type, payload, CRC32 (of type and payload). Revision
+ * record lists its chunks as runs copied from the previous revision and
+ * hashes of other chunks, so it is small when little has changed.
+ */
+public class RevisionStore {
+    private static final int MAGIC = 0x57544852; // "WTHR"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final Path STORE_DIR = Paths.get(System.getProperty("user.home"), ".webtools-trans-helper", "revisions");
+    private static final long MAX_PACK_SIZE = 8 * 1024 * 1024;
+    private static final int MAX_REVISIONS = 200;
+    private static final byte CHUNK = 1;
+    private static final byte REVISION = 2;
+    private static final byte COPY = 1;
+    private static final byte NEW = 2;
+    private static final int HASH_SIZE = 20;
+    private static final int MIN_CHUNK = 512;
+    private static final int MAX_CHUNK = 16 * 1024;
+    // Top 11 bits of hash have to be zero - chunks have about 2 kB
+    private static final long CHUNK_MASK = 0x7FFL << 53;
+    private static final long[] GEAR = new long[256];
+
+    static {
+        // Fixed seed - boundaries must be the same in every session
+        Random random = new Random(0x5754485200000001L);
+        for(int i = 0; i < GEAR.length; i++) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    /**
+     * Stored revision of file.
+     */
+    public static class Revision {
+        private final long time;
+        private final byte[] hash;
+        private final long size;
+        private final byte[][] chunks;
+
+        private Revision(long time, byte[] hash, long size, byte[][] chunks) {
+            this.time = time;
+            this.hash = hash;
+            this.size = size;
+            this.chunks = chunks;
+        }
+
+        /**
+         * @return Time when revision was stored (in milliseconds since epoch).
+         */
+        public long getTime() {
+            return time;
+        }
+
+        /**
+         * @return Hash of file content.
+         */
+        public byte[] getHash() {
+            return hash;
+        }
+
+        /**
+         * @return Size of file.
+         */
+        public long getSize() {
+            return size;
+        }
+    }
+
+    /**
+     * Opened pack file of one XML file.
+     */
+    private static class Pack {
+        private final Path path;
+        private final FileChannel channel;
+        // Offsets of chunk records by hex hash of chunk
+        private final Map<String, Long> chunks = new HashMap<>();
+        private final List<Revision> revisions = new ArrayList<>();
+
+        private Pack(Path path, FileChannel channel) {
+            this.path = path;
+            this.channel = channel;
+        }
+    }
+
+    private static final Map<Path, Pack> packs = new HashMap<>();
+
+    /**
+     * Stores current content of file as a new revision (unless it is the
+     * same as the last revision). The file is always hashed - hash known
+     * by the caller may be out of date if the file was changed outside of
+     * the application.
+     * @param file
+     * @return Count of written bytes or -1 if revision was not stored.
+     */
+    public static synchronized long store(File file) {
+        try {
+            Pack pack = open(file);
+            Revision last = pack.revisions.isEmpty() ? null : pack.revisions.get(pack.revisions.size() - 1);
+            byte[] content = Files.readAllBytes(file.toPath());
+            byte[] contentHash = SnapshotCache.newDigest().digest(content);
+            if(last != null && Arrays.equals(contentHash, last.hash)) {
+                return 0;
+            }
+
+            // Append new chunks and revision record
+            long start = pack.channel.size();
+            long position = start;
+            MessageDigest digest = SnapshotCache.newDigest();
+            Deflater deflater = new Deflater();
+            List<byte[]> chunks = new ArrayList<>();
+            int from = 0;
+            for(int to : split(content)) {
+                digest.update(content, from, to - from);
+                byte[] chunkHash = digest.digest();
+                chunks.add(chunkHash);
+                String key = hex(chunkHash);
+                if(!pack.chunks.containsKey(key)) {
+                    byte[] record = chunkRecord(chunkHash, content, from, to - from, deflater);
+                    write(pack.channel, position, record);
+                    pack.chunks.put(key, position);
+                    position += record.length;
+                }
+                from = to;
+            }
+            deflater.end();
+
+            Revision revision = new Revision(System.currentTimeMillis(), contentHash, content.length,
+                    chunks.toArray(new byte[chunks.size()][]));
+            byte[] record = revisionRecord(revision, last);
+            write(pack.channel, position, record);
+            position += record.length;
+            pack.channel.force(false);
+            pack.revisions.add(revision);
+
+            if(position > MAX_PACK_SIZE || pack.revisions.size() > MAX_REVISIONS) {
+                prune(pack);
+            }
+
+            return position - start;
+        } catch(IOException ioe) {
+            ioe.printStackTrace();
+        }
+
+        return -1;
+    }
+
+    /**
+     * @param file
+     * @return Stored revisions of file (newest first).
+     */
+    public static synchronized List<Revision> getRevisions(File file) {
+        try {
+            List<Revision> revisions = new ArrayList<>(open(file).revisions);
+            Collections.reverse(revisions);
+            return revisions;
+        } catch(IOException ioe) {
+            ioe.printStackTrace();
+        }
+
+        return Collections.emptyList();
+    }
+
+    /**
+     * Restores revision of file. Current content is stored as a new
+     * revision first, so restore can be reverted.
+     * @param file
+     * @param index Index of revision (0 is the newest one).
+     * @throws IOException
+     */
+    public static synchronized void restore(File file, int index) throws IOException {
+        Pack pack = open(file);
+        if(index < 0 || index >= pack.revisions.size()) {
+            throw new IOException("Revize " + index + " souboru " + file + " neexistuje");
+        }
+
+        Revision revision = pack.revisions.get(pack.revisions.size() - 1 - index);
+        byte[] content = read(pack, revision);
+        if(file.exists()) {
+            store(file);
+        }
+
+        Path target = file.toPath().toAbsolutePath();
+        Path temp = Files.createTempFile(target.getParent(), file.getName(), ".tmp");
+        try {
+            try(FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                write(out, 0, content);
+                out.force(false);
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch(AtomicMoveNotSupportedException amnse) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Finds content-defined chunk boundaries.
+     * @param content
+     * @return End offsets of chunks.
+     */
+    static List<Integer> split(byte[] content) {
+        List<Integer> ends = new ArrayList<>(content.length / 2048 + 1);
+        int start = 0;
+        long hash = 0;
+
+        for(int i = 0; i < content.length; i++) {
+            hash = (hash << 1) + GEAR[content[i] & 0xFF];
+            int length = i + 1 - start;
+            if((length >= MIN_CHUNK && (hash & CHUNK_MASK) == 0) || length >= MAX_CHUNK) {
+                ends.add(i + 1);
+                start = i + 1;
+                hash = 0;
+            }
+        }
+        if(start < content.length) {
+            ends.add(content.length);
+        }
+
+        return ends;
+    }
+
+    /**
+     * @param pack
+     * @param revision
+     * @return Content of revision.
+     * @throws IOException
+     */
+    private static byte[] read(Pack pack, Revision revision) throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream((int) revision.size);
+        Inflater inflater = new Inflater();
+        try {
+            for(byte[] chunkHash : revision.chunks) {
+                Long offset = pack.chunks.get(hex(chunkHash));
+                if(offset == null) {
+                    throw new IOException("Chybí část revize v " + pack.path);
+                }
+
+                ByteBuffer record = readRecord(pack.channel, offset);
+                record.position(1 + HASH_SIZE);
+                byte[] chunk = new byte[record.getInt()];
+                inflater.reset();
+                inflater.setInput(record.array(), record.position(), record.limit() - record.position());
+                if(inflater.inflate(chunk) != chunk.length) {
+                    throw new IOException("Poškozená část revize v " + pack.path);
+                }
+                content.write(chunk, 0, chunk.length);
+            }
+        } catch(DataFormatException dfe) {
+            throw new IOException(dfe);
+        } finally {
+            inflater.end();
+        }
+
+        byte[] result = content.toByteArray();
+        if(!Arrays.equals(SnapshotCache.newDigest().digest(result), revision.hash)) {
+            throw new IOException("Poškozená revize v " + pack.path);
+        }
+
+        return result;
+    }
+
+    /**
+     * Drops the oldest revisions (so pack shrinks to half of its maximal
+     * size) and rewrites pack without chunks which are not used any more.
+     * Revisions with missing chunks are dropped too.
+     * @param pack
+     * @throws IOException
+     */
+    private static void prune(Pack pack) throws IOException {
+        // Revisions with missing chunks can not be read (see read()), they
+        // are dropped
+        List<Revision> revisions = new ArrayList<>(pack.revisions.size());
+        for(Revision revision : pack.revisions) {
+            if(Arrays.stream(revision.chunks).allMatch(chunkHash -> pack.chunks.containsKey(hex(chunkHash)))) {
+                revisions.add(revision);
+            }
+        }
+
+        // Newest revisions are kept while their chunks fit
+        Set<String> kept = new HashSet<>();
+        long size = HEADER_SIZE;
+        int first = revisions.size();
+        for(int i = revisions.size() - 1; i >= 0; i--) {
+            Revision revision = revisions.get(i);
+            long revisionSize = 4 + 1 + 8 + HASH_SIZE + 8 + 4 + revision.chunks.length * (HASH_SIZE + 1) + 4;
+            Set<String> added = new HashSet<>();
+            for(byte[] chunkHash : revision.chunks) {
+                String key = hex(chunkHash);
+                if(!kept.contains(key) && added.add(key)) {
+                    revisionSize += readRecordLength(pack.channel, pack.chunks.get(key));
+                }
+            }
+            boolean full = size + revisionSize > MAX_PACK_SIZE / 2 || revisions.size() - i > MAX_REVISIONS / 2;
+            if(full && i < revisions.size() - 1) {
+                break;
+            }
+            kept.addAll(added);
+            size += revisionSize;
+            first = i;
+        }
+
+        Path temp = Files.createTempFile(STORE_DIR, "pack", ".tmp");
+        try {
+            Map<String, Long> chunks = new HashMap<>();
+            try(FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                long position = write(out, 0, header());
+                for(int i = first; i < revisions.size(); i++) {
+                    Revision revision = revisions.get(i);
+                    Revision previous = i > first ? revisions.get(i - 1) : null;
+                    for(byte[] chunkHash : revision.chunks) {
+                        String key = hex(chunkHash);
+                        if(!chunks.containsKey(key)) {
+                            chunks.put(key, position);
+                            ByteBuffer record = readRecord(pack.channel, pack.chunks.get(key));
+                            position += write(out, position, frame(record.array()));
+                        }
+                    }
+                    position += write(out, position, revisionRecord(revision, previous));
+                }
+                out.force(false);
+            }
+            pack.channel.close();
+            try {
+                Files.move(temp, pack.path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch(AtomicMoveNotSupportedException amnse) {
+                Files.move(temp, pack.path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+            packs.remove(pack.path);
+        }
+    }
+
+    /**
+     * Opens pack of file (packs stay open, they are read only once).
+     * @param file
+     * @return Pack
+     * @throws IOException
+     */
+    private static Pack open(File file) throws IOException {
+        Path path = getPackFile(file);
+        Pack pack = packs.get(path);
+        if(pack != null) {
+            return pack;
+        }
+
+        Files.createDirectories(STORE_DIR);
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        pack = new Pack(path, channel);
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+
+        long valid = 0;
+        if(buffer.remaining() >= HEADER_SIZE && buffer.getInt() == MAGIC && buffer.getInt() == VERSION) {
+            valid = read(pack, buffer);
+        }
+        if(valid == 0) {
+            channel.truncate(0);
+            write(channel, 0, header());
+            channel.force(false);
+        } else {
+            // Drop torn record (written only partially before crash)
+            channel.truncate(valid);
+        }
+
+        packs.put(path, pack);
+        return pack;
+    }
+
+    /**
+     * Reads records of pack.
+     * @param pack
+     * @param buffer Content of pack file (after header).
+     * @return Length of valid part of pack file.
+     */
+    private static long read(Pack pack, ByteBuffer buffer) {
+        int valid = buffer.position();
+
+        try {
+            while(buffer.remaining() >= 4) {
+                int offset = buffer.position();
+                int length = buffer.getInt();
+                if(length < 1 || length + 4 > buffer.remaining()) {
+                    break;
+                }
+
+                CRC32 crc = new CRC32();
+                crc.update(buffer.array(), buffer.position(), length);
+                if(buffer.getInt(buffer.position() + length) != (int) crc.getValue()) {
+                    break;
+                }
+
+                int end = buffer.position() + length;
+                byte type = buffer.get();
+                if(type == CHUNK) {
+                    byte[] chunkHash = new byte[HASH_SIZE];
+                    buffer.get(chunkHash);
+                    pack.chunks.put(hex(chunkHash), (long) offset);
+                } else if(type == REVISION) {
+                    long time = buffer.getLong();
+                    byte[] hash = new byte[HASH_SIZE];
+                    buffer.get(hash);
+                    long size = buffer.getLong();
+                    Revision previous = pack.revisions.isEmpty() ? null : pack.revisions.get(pack.revisions.size() - 1);
+                    pack.revisions.add(new Revision(time, hash, size, readChunks(buffer, previous)));
+                }
+                buffer.position(end + 4);
+                valid = buffer.position();
+            }
+        } catch(BufferUnderflowException | IllegalArgumentException e) {
+            // Torn record
+        }
+
+        return valid;
+    }
+
+    /**
+     * @param chunkHash
+     * @param content
+     * @param offset
+     * @param length
+     * @param deflater
+     * @return Record of compressed chunk.
+     */
+    private static byte[] chunkRecord(byte[] chunkHash, byte[] content, int offset, int length, Deflater deflater) {
+        deflater.reset();
+        deflater.setInput(content, offset, length);
+        deflater.finish();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(length / 2 + 64);
+        byte[] buffer = new byte[4096];
+        while(!deflater.finished()) {
+            int count = deflater.deflate(buffer);
+            compressed.write(buffer, 0, count);
+        }
+
+        ByteBuffer payload = ByteBuffer.allocate(1 + HASH_SIZE + 4 + compressed.size());
+        payload.put(CHUNK);
+        payload.put(chunkHash);
+        payload.putInt(length);
+        payload.put(compressed.toByteArray());
+        return frame(payload.array());
+    }
+
+    /**
+     * @param revision
+     * @param previous Previous revision (NULL if there is none).
+     * @return Record of revision.
+     */
+    private static byte[] revisionRecord(Revision revision, Revision previous) {
+        // Positions of chunks in previous revision
+        Map<String, Integer> positions = new HashMap<>();
+        if(previous != null) {
+            for(int i = previous.chunks.length - 1; i >= 0; i--) {
+                positions.put(hex(previous.chunks[i]), i);
+            }
+        }
+
+        ByteArrayOutputStream ops = new ByteArrayOutputStream(64);
+        int count = 0;
+        int runStart = -1;
+        int runLength = 0;
+        for(int i = 0; i <= revision.chunks.length; i++) {
+            // Extend run while chunks follow each other in previous revision
+            if(i < revision.chunks.length && runLength > 0 && runStart + runLength < previous.chunks.length
+                    && Arrays.equals(revision.chunks[i], previous.chunks[runStart + runLength])) {
+                runLength++;
+                continue;
+            }
+            if(runLength > 0) {
+                ops.write(COPY);
+                ops.write(ByteBuffer.allocate(8).putInt(runStart).putInt(runLength).array(), 0, 8);
+                count++;
+                runLength = 0;
+            }
+            if(i == revision.chunks.length) {
+                break;
+            }
+
+            Integer position = positions.get(hex(revision.chunks[i]));
+            if(position != null) {
+                runStart = position;
+                runLength = 1;
+            } else {
+                ops.write(NEW);
+                ops.write(revision.chunks[i], 0, HASH_SIZE);
+                count++;
+            }
+        }
+
+        ByteBuffer payload = ByteBuffer.allocate(1 + 8 + HASH_SIZE + 8 + 4 + ops.size());
+        payload.put(REVISION);
+        payload.putLong(revision.time);
+        payload.put(revision.hash);
+        payload.putLong(revision.size);
+        payload.putInt(count);
+        payload.put(ops.toByteArray());
+        return frame(payload.array());
+    }
+
+    /**
+     * @param buffer Buffer positioned on operations of revision record.
+     * @param previous Previous revision (NULL if there is none).
+     * @return Hashes of chunks of revision.
+     */
+    private static byte[][] readChunks(ByteBuffer buffer, Revision previous) {
+        List<byte[]> chunks = new ArrayList<>();
+        int count = buffer.getInt();
+        for(int i = 0; i < count; i++) {
+            byte op = buffer.get();
+            if(op == COPY && previous != null) {
+                int start = buffer.getInt();
+                int length = buffer.getInt();
+                chunks.addAll(Arrays.asList(previous.chunks).subList(start, start + length));
+            } else if(op == NEW) {
+                byte[] chunk = new byte[HASH_SIZE];
+                buffer.get(chunk);
+                chunks.add(chunk);
+            } else {
+                throw new IllegalArgumentException("Unknown operation " + op);
+            }
+        }
+
+        return chunks.toArray(new byte[chunks.size()][]);
+    }
+
+    /**
+     * @param payload Type and payload of record.
+     * @return Record (including length and checksum).
+     */
+    private static byte[] frame(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer record = ByteBuffer.allocate(4 + payload.length + 4);
+        record.putInt(payload.length);
+        record.put(payload);
+        record.putInt((int) crc.getValue());
+        return record.array();
+    }
+
+    /**
+     * @param channel
+     * @param offset Offset of record.
+     * @return Type and payload of record.
+     * @throws IOException
+     */
+    private static ByteBuffer readRecord(FileChannel channel, long offset) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(readRecordLength(channel, offset) - 8);
+        while(record.hasRemaining()) {
+            if(channel.read(record, offset + 4 + record.position()) < 0) {
+                throw new IOException("Neočekávaný konec souboru revizí");
+            }
+        }
+        record.flip();
+        return record;
+    }
+
+    /**
+     * @param channel
+     * @param offset Offset of record.
+     * @return Length of the whole record (including length and checksum).
+     * @throws IOException
+     */
+    private static int readRecordLength(FileChannel channel, long offset) throws IOException {
+        ByteBuffer length = ByteBuffer.allocate(4);
+        while(length.hasRemaining()) {
+            if(channel.read(length, offset + length.position()) < 0) {
+                throw new IOException("Neočekávaný konec souboru revizí");
+            }
+        }
+
+        return 4 + length.getInt(0) + 4;
+    }
+
+    /**
+     * @param channel
+     * @param position
+     * @param bytes
+     * @return Count of written bytes.
+     * @throws IOException
+     */
+    private static long write(FileChannel channel, long position, byte[] bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while(buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+
+        return bytes.length;
+    }
+
+    /**
+     * @return Header of pack file.
+     */
+    private static byte[] header() {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        return header.array();
+    }
+
+    /**
+     * @param file
+     * @return Path of pack file for given XML file.
+     */
+    private static Path getPackFile(File file) {
+        return STORE_DIR.resolve(hex(SnapshotCache.newDigest().digest(file.getAbsolutePath().getBytes(StandardCharsets.UTF_8))) + ".pack");
+    }
+
+    /**
+     * @param bytes
+     * @return Hexadecimal string.
+     */
+    private static String hex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for(byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+
+        return hex.toString();
+    }
+}
@@ -0,0 +1,153 @@
+/**
+ * @author Ondřej Doněk <ondrejd@gmail.com>
+ * @link https://github.com/ondrejd/webtools-trans-helper for the canonical source repository
+ * @license https://www.gnu.org/licenses/gpl-3.0.en.html GNU General Public License 3.0
+ */
+
+package com.ondrejd;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import javafx.application.Platform;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+
+/**
+ * Computes rows shown in the table in background.
+ *
+ * Search index is owned by a single worker thread - changes of data are
+ * passed to it in batches and searches run on it too. JavaFX thread only
+ * takes a snapshot of rows to filter and later swaps the result into the
+ * table in one change. When a new filter is requested the pending one is
+ * cancelled (its result is never shown).
+ */
+public class RowFilter {
+    private final SearchIndex searchIndex = new SearchIndex();
+    private final ExecutorService worker;
+    private final AtomicLong lastRequest = new AtomicLong();
+    private long shownRequest = 0;
+
+    /**
+     * Constructor
+     * @param data Data rows.
+     */
+    public RowFilter(ObservableList<TranslationString> data) {
+        worker = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "row-filter");
+            t.setDaemon(true);
+            return t;
+        });
+        index(Collections.emptyList(), new ArrayList<>(data));
+        data.addListener((ListChangeListener.Change<? extends TranslationString> c) -> {
+            while(c.next()) {
+                List<TranslationString> removed = c.wasRemoved() ? new ArrayList<>(c.getRemoved()) : Collections.emptyList();
+                List<TranslationString> added = c.wasAdded() ? new ArrayList<>(c.getAddedSubList()) : Collections.emptyList();
+                index(removed, added);
+            }
+        });
+    }
+
+    /**
+     * @param removed
+     * @param added
+     */
+    private void index(List<TranslationString> removed, List<TranslationString> added) {
+        worker.execute(() -> {
+            removed.forEach(searchIndex::remove);
+            added.forEach(searchIndex::add);
+        });
+    }
+
+    /**
+     * Re-indexes row after its text was edited. Must be called on JavaFX thread.
+     * @param row
+     */
+    public void update(TranslationString row) {
+        worker.execute(() -> searchIndex.update(row));
+    }
+
+    /**
+     * @return Returns TRUE if result of the last request was not shown yet.
+     */
+    public boolean isPending() {
+        return shownRequest != lastRequest.get();
+    }
+
+    /**
+     * Computes rows to show in background. Must be called on JavaFX thread.
+     * @param rows Rows passing current filter (copied before the method returns).
+     * @param all Returns TRUE if rows are all data rows (nothing is filtered out).
+     * @param query Search query (empty if search is not used).
+     * @param limit Maximal count of rows found by search.
+     * @param callback Called on JavaFX thread with rows to show (not called
+     *        if another filter was requested in the meantime).
+     */
+    public void filter(List<TranslationString> rows, boolean all, String query, int limit, Consumer<List<TranslationString>> callback) {
+        long request = lastRequest.incrementAndGet();
+        TranslationString[] snapshot = rows.toArray(new TranslationString[rows.size()]);
+
+        worker.execute(() -> {
+            if(request != lastRequest.get()) {
+                return;
+            }
+
+            List<TranslationString> result = query.isEmpty() ? Arrays.asList(snapshot) : search(snapshot, all, query, limit);
+            Platform.runLater(() -> {
+                if(request == lastRequest.get()) {
+                    shownRequest = request;
+                    callback.accept(result);
+                }
+            });
+        });
+    }
+
+    /**
+     * Finds all rows matching search query in background (no limit, pending
+     * filter is not cancelled). Must be called on JavaFX thread.
+     * @param rows Rows passing current filter (copied before the method returns).
+     * @param all Returns TRUE if rows are all data rows (nothing is filtered out).
+     * @param query Search query (empty if search is not used).
+     * @param callback Called on JavaFX thread with found rows.
+     */
+    public void findAll(List<TranslationString> rows, boolean all, String query, Consumer<List<TranslationString>> callback) {
+        TranslationString[] snapshot = rows.toArray(new TranslationString[rows.size()]);
+
+        worker.execute(() -> {
+            List<TranslationString> result = query.isEmpty() ? Arrays.asList(snapshot) : search(snapshot, all, query, Integer.MAX_VALUE);
+            Platform.runLater(() -> callback.accept(result));
+        });
+    }
+
+    /**
+     * @param rows
+     * @param all
+     * @param query
+     * @param limit
+     * @return Ranked rows matching query which are among given rows.
+     */
+    private List<TranslationString> search(TranslationString[] rows, boolean all, String query, int limit) {
+        List<TranslationString> found = searchIndex.search(query, all ? limit : Integer.MAX_VALUE);
+        if(all) {
+            return found;
+        }
+
+        Set<TranslationString> allowed = Collections.newSetFromMap(new IdentityHashMap<>(rows.length));
+        allowed.addAll(Arrays.asList(rows));
+        List<TranslationString> result = new ArrayList<>(Math.min(limit, found.size()));
+        for(int i = 0; i < found.size() && result.size() < limit; i++) {
+            if(allowed.contains(found.get(i))) {
+                result.add(found.get(i));
+            }
+        }
+
+        return result;
+    }
+}
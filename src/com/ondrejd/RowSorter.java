@@ -0,0 +1,226 @@
+/**
+ * @author Ondřej Doněk <ondrejd@gmail.com>
+ * @link https://github.com/ondrejd/webtools-trans-helper for the canonical source repository
+ * @license https://www.gnu.org/licenses/gpl-3.0.en.html GNU General Public License 3.0
+ */
+
+package com.ondrejd;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import javafx.application.Platform;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+
+/**
+ * Sorts rows shown in the table by language rules (Czech by default - so
+ * "ch" follows "h" and "č" follows "c").
+ *
+ * Comparing strings by {@link Collator} is slow because it decomposes both
+ * strings on every comparison. Collation keys are computed once per row
+ * and column instead and kept until the value of the column changes (e.g.
+ * text is edited), comparison of keys is a plain comparison of bytes. Keys
+ * are owned by a single worker thread where sorting runs too, JavaFX
+ * thread only takes a snapshot of sorted values.
+ */
+public class RowSorter {
+    private static final int MAX_COLUMNS = 16;
+
+    /**
+     * Column to sort by.
+     */
+    public static class Column {
+        private final int id;
+        private final Function<TranslationString, String> value;
+        private final boolean descending;
+
+        /**
+         * @param id Unique id of column (e.g. its index) - keys are cached by it.
+         * @param value Sorted value of row.
+         * @param descending
+         */
+        public Column(int id, Function<TranslationString, String> value, boolean descending) {
+            if(id < 0 || id >= MAX_COLUMNS) {
+                throw new IllegalArgumentException("Column id " + id + " out of range");
+            }
+            this.id = id;
+            this.value = value;
+            this.descending = descending;
+        }
+    }
+
+    /**
+     * Values and their keys cached for one row (by column id). Arrays are
+     * only as long as the highest sorted column id needs.
+     */
+    private static class Keys {
+        private String[] values;
+        private CollationKey[] keys;
+
+        Keys(int columns) {
+            values = new String[columns];
+            keys = new CollationKey[columns];
+        }
+
+        /**
+         * @param column
+         */
+        void ensureColumn(int column) {
+            if(column >= values.length) {
+                values = Arrays.copyOf(values, column + 1);
+                keys = Arrays.copyOf(keys, column + 1);
+            }
+        }
+    }
+
+    // Accessed only by worker thread
+    private final Collator collator;
+    private final Map<TranslationString, Keys> cache = new IdentityHashMap<>();
+
+    private final ExecutorService worker;
+    private final AtomicLong lastRequest = new AtomicLong();
+    private long shownRequest = 0;
+
+    /**
+     * Constructor
+     * @param data Data rows (keys of removed rows are dropped).
+     * @param locale Locale of sorting rules.
+     */
+    public RowSorter(ObservableList<TranslationString> data, Locale locale) {
+        collator = Collator.getInstance(locale);
+        worker = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "row-sorter");
+            t.setDaemon(true);
+            return t;
+        });
+        data.addListener((ListChangeListener.Change<? extends TranslationString> c) -> {
+            while(c.next()) {
+                if(c.wasRemoved()) {
+                    List<TranslationString> removed = new ArrayList<>(c.getRemoved());
+                    worker.execute(() -> removed.forEach(cache::remove));
+                }
+            }
+        });
+    }
+
+    /**
+     * @return Returns TRUE if result of the last request was not shown yet.
+     */
+    public boolean isPending() {
+        return shownRequest != lastRequest.get();
+    }
+
+    /**
+     * Cancels pending request (its result will not be shown).
+     */
+    public void cancel() {
+        shownRequest = lastRequest.incrementAndGet();
+    }
+
+    /**
+     * Sorts rows in background. Must be called on JavaFX thread. Sort is
+     * stable - rows with equal values keep their order.
+     * @param rows Rows to sort (copied before the method returns).
+     * @param order Columns to sort by (the first one decides first).
+     * @param callback Called on JavaFX thread with sorted rows (not called
+     *        if another sort was requested in the meantime).
+     */
+    public void sort(List<TranslationString> rows, List<Column> order, Consumer<List<TranslationString>> callback) {
+        long request = lastRequest.incrementAndGet();
+        TranslationString[] snapshot = rows.toArray(new TranslationString[rows.size()]);
+        Column[] columns = order.toArray(new Column[order.size()]);
+        String[][] values = new String[columns.length][snapshot.length];
+        for(int c = 0; c < columns.length; c++) {
+            for(int i = 0; i < snapshot.length; i++) {
+                values[c][i] = columns[c].value.apply(snapshot[i]);
+            }
+        }
+
+        worker.execute(() -> {
+            if(request != lastRequest.get()) {
+                return;
+            }
+
+            List<TranslationString> result = sort(snapshot, columns, values);
+            Platform.runLater(() -> {
+                if(request == lastRequest.get()) {
+                    shownRequest = request;
+                    callback.accept(result);
+                }
+            });
+        });
+    }
+
+    /**
+     * Sorts rows (on the calling thread).
+     * @param rows
+     * @param columns
+     * @param values Values of rows (by column).
+     * @return Sorted rows.
+     */
+    List<TranslationString> sort(TranslationString[] rows, Column[] columns, String[][] values) {
+        // Keys of sorted columns are gathered so comparison does not touch
+        // the cache
+        CollationKey[][] keys = new CollationKey[rows.length][];
+        Integer[] order = new Integer[rows.length];
+        for(int i = 0; i < rows.length; i++) {
+            keys[i] = new CollationKey[columns.length];
+            for(int c = 0; c < columns.length; c++) {
+                keys[i][c] = getKey(rows[i], columns[c].id, values[c][i]);
+            }
+            order[i] = i;
+        }
+
+        Arrays.sort(order, (a, b) -> {
+            for(int c = 0; c < columns.length; c++) {
+                int cmp = keys[a][c].compareTo(keys[b][c]);
+                if(cmp != 0) {
+                    return columns[c].descending ? -cmp : cmp;
+                }
+            }
+            return 0;
+        });
+
+        List<TranslationString> result = new ArrayList<>(rows.length);
+        for(int i : order) {
+            result.add(rows[i]);
+        }
+
+        return result;
+    }
+
+    /**
+     * @param row
+     * @param column
+     * @param value
+     * @return Cached key of value (computed again if value changed).
+     */
+    private CollationKey getKey(TranslationString row, int column, String value) {
+        value = value == null ? "" : value;
+        Keys keys = cache.get(row);
+        if(keys == null) {
+            keys = new Keys(column + 1);
+            cache.put(row, keys);
+        }
+        keys.ensureColumn(column);
+
+        String cached = keys.values[column];
+        if(cached == null || (cached != value && !cached.equals(value))) {
+            keys.values[column] = value;
+            keys.keys[column] = collator.getCollationKey(value);
+        }
+
+        return keys.keys[column];
+    }
+}
@@ -0,0 +1,313 @@
+/**
+ * @author Ondřej Doněk <ondrejd@gmail.com>
+ * @link https://github.com/ondrejd/webtools-trans-helper for the canonical source repository
+ * @license https://www.gnu.org/licenses/gpl-3.0.en.html GNU General Public License 3.0
+ */
+
+package com.ondrejd;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+
+/**
+ * Full-text (substring) search over names and texts of data rows.
+ *
+ * Names and texts are folded (lower case, without diacritics - so "cesky"
+ * finds "Český") and indexed by trigrams. Query is answered by intersecting
+ * trigram posting lists and verifying the candidates. Index is updated
+ * incrementally when rows are loaded or edited. Index is not thread-safe,
+ * it has to be used by a single thread (see {@link RowFilter}).
+ */
+public class SearchIndex {
+    private static final int RANKS = 6;
+    private static final char[] FOLDED = new char[0x250];
+
+    static {
+        // Precompute folding of Latin characters (covers Czech alphabet)
+        for(char c = 0; c < FOLDED.length; c++) {
+            String folded = foldSlow(String.valueOf(c));
+            FOLDED[c] = folded.length() == 1 ? folded.charAt(0) : Character.toLowerCase(c);
+        }
+    }
+
+    private final List<TranslationString> rows = new ArrayList<>();
+    private final List<String> names = new ArrayList<>();
+    private final List<String> texts = new ArrayList<>();
+    private final Map<TranslationString, Integer> ids = new IdentityHashMap<>();
+    private final TrigramMap postings = new TrigramMap();
+
+    /**
+     * Constructor of empty index (rows are added by {@link #add(TranslationString)}).
+     */
+    public SearchIndex() {
+    }
+
+    /**
+     * Constructor of index kept in sync with data list.
+     * @param data Data rows.
+     */
+    public SearchIndex(ObservableList<TranslationString> data) {
+        data.forEach(this::add);
+        data.addListener((ListChangeListener.Change<? extends TranslationString> c) -> {
+            while(c.next()) {
+                if(c.wasRemoved()) {
+                    c.getRemoved().forEach(this::remove);
+                }
+                if(c.wasAdded()) {
+                    c.getAddedSubList().forEach(this::add);
+                }
+            }
+        });
+    }
+
+    /**
+     * Converts string to lower case and removes diacritics.
+     * @param s
+     * @return String
+     */
+    public static String fold(String s) {
+        if(s == null) {
+            return "";
+        }
+
+        char[] folded = new char[s.length()];
+        for(int i = 0; i < folded.length; i++) {
+            char c = s.charAt(i);
+            if(c < FOLDED.length) {
+                folded[i] = FOLDED[c];
+            } else {
+                // Rare characters (outside of Latin) are folded the slow way
+                return foldSlow(s);
+            }
+        }
+
+        return new String(folded);
+    }
+
+    /**
+     * @param s
+     * @return Folded string (using Unicode decomposition).
+     */
+    private static String foldSlow(String s) {
+        String decomposed = Normalizer.normalize(s, Normalizer.Form.NFD);
+        StringBuilder folded = new StringBuilder(decomposed.length());
+        for(int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if(Character.getType(c) != Character.NON_SPACING_MARK) {
+                folded.append(c);
+            }
+        }
+
+        return folded.toString().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Re-indexes row after its text was edited.
+     * @param row
+     */
+    public void update(TranslationString row) {
+        Integer id = ids.get(row);
+        if(id == null) {
+            return;
+        }
+
+        String text = fold(row.getText());
+        if(text.equals(texts.get(id))) {
+            return;
+        }
+
+        unindex(id, texts.get(id));
+        texts.set(id, text);
+        index(id, text);
+        // Name trigrams may have been shared with old text
+        index(id, names.get(id));
+    }
+
+    /**
+     * @param row
+     * @param query
+     * @return Returns TRUE if name or text of row contains query.
+     */
+    public static boolean matches(TranslationString row, String query) {
+        String q = fold(query);
+        return fold(row.getName()).contains(q) || fold(row.getText()).contains(q);
+    }
+
+    /**
+     * Searches rows whose name or text contains query.
+     *
+     * Results are ranked - exact and prefix matches of name come first,
+     * then those of text, then other matches.
+     * @param query
+     * @param limit Maximal count of returned rows.
+     * @return Ranked rows.
+     */
+    public List<TranslationString> search(String query, int limit) {
+        String q = fold(query);
+        if(q.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        // Rows are collected into buckets by rank
+        IntList[] buckets = new IntList[RANKS];
+        for(int i = 0; i < RANKS; i++) {
+            buckets[i] = new IntList();
+        }
+
+        if(q.length() < 3) {
+            // Too short for trigrams - scan all rows
+            for(int id = 0; id < rows.size(); id++) {
+                rank(id, q, buckets);
+            }
+        } else {
+            for(int id : candidates(q)) {
+                rank(id, q, buckets);
+            }
+        }
+
+        // Within the same rank rows keep order of data
+        List<TranslationString> result = new ArrayList<>(Math.min(limit, 64));
+        for(int i = 0; i < RANKS && result.size() < limit; i++) {
+            IntList bucket = buckets[i];
+            for(int j = 0; j < bucket.size() && result.size() < limit; j++) {
+                result.add(rows.get(bucket.get(j)));
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Computes rank of row and adds it to corresponding bucket.
+     * @param id
+     * @param q Folded query.
+     * @param buckets
+     */
+    private void rank(int id, String q, IntList[] buckets) {
+        String name = names.get(id);
+        String text = texts.get(id);
+        if(name == null) {
+            return;
+        }
+
+        int rank;
+        if(name.equals(q)) {
+            rank = 0;
+        } else if(name.startsWith(q)) {
+            rank = 1;
+        } else if(text.equals(q)) {
+            rank = 2;
+        } else if(text.startsWith(q)) {
+            rank = 3;
+        } else if(name.contains(q)) {
+            rank = 4;
+        } else if(text.contains(q)) {
+            rank = 5;
+        } else {
+            return;
+        }
+
+        buckets[rank].add(id);
+    }
+
+    /**
+     * @param q Folded query (at least 3 characters long).
+     * @return Ids of rows containing all trigrams of query.
+     */
+    private int[] candidates(String q) {
+        List<IntList> lists = new ArrayList<>();
+        for(int i = 0; i + 3 <= q.length(); i++) {
+            IntList list = postings.get(TrigramMap.trigram(q, i));
+            if(list == null) {
+                return new int[0];
+            }
+            lists.add(list);
+        }
+
+        // Intersect starting with the shortest list
+        lists.sort(Comparator.comparingInt(IntList::size));
+        int[] result = lists.get(0).toArray();
+        int size = result.length;
+        for(int i = 1; i < lists.size() && size > 0; i++) {
+            IntList list = lists.get(i);
+            int kept = 0;
+            int k = 0;
+            // Both lists are sorted - merge them
+            for(int j = 0; j < size && k < list.size(); j++) {
+                while(k < list.size() && list.get(k) < result[j]) {
+                    k++;
+                }
+                if(k < list.size() && list.get(k) == result[j]) {
+                    result[kept++] = result[j];
+                }
+            }
+            size = kept;
+        }
+
+        return Arrays.copyOf(result, size);
+    }
+
+    /**
+     * @param row
+     */
+    public void add(TranslationString row) {
+        int id = rows.size();
+        String name = fold(row.getName());
+        String text = fold(row.getText());
+        rows.add(row);
+        names.add(name);
+        texts.add(text);
+        ids.put(row, id);
+        index(id, name);
+        index(id, text);
+    }
+
+    /**
+     * @param row
+     */
+    public void remove(TranslationString row) {
+        Integer id = ids.remove(row);
+        if(id == null) {
+            return;
+        }
+
+        unindex(id, names.get(id));
+        unindex(id, texts.get(id));
+        // Keep slot so ids of other rows do not change
+        rows.set(id, null);
+        names.set(id, null);
+        texts.set(id, null);
+    }
+
+    /**
+     * @param id
+     * @param s Folded string.
+     */
+    private void index(int id, String s) {
+        for(int i = 0; i + 3 <= s.length(); i++) {
+            postings.getOrCreate(TrigramMap.trigram(s, i)).add(id);
+        }
+    }
+
+    /**
+     * @param id
+     * @param s Folded string.
+     */
+    private void unindex(int id, String s) {
+        for(int i = 0; i + 3 <= s.length(); i++) {
+            IntList list = postings.get(TrigramMap.trigram(s, i));
+            if(list != null) {
+                list.remove(id);
+            }
+        }
+    }
+}
@@ -0,0 +1,277 @@
+/**
+ * @author Ondřej Doněk <ondrejd@gmail.com>
+ * @link https://github.com/ondrejd/webtools-trans-helper for the canonical source repository
+ * @license https://www.gnu.org/licenses/gpl-3.0.en.html GNU General Public License 3.0
+ */
+
+package com.ondrejd;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Binary cache of parsed XML files.
+ *
+ * For every source file one cache file is kept with its path, size,
+ * modification time and SHA-1 hash followed by parsed rows. If size and
+ * modification time of the source file did not change the rows are read
+ * straight from the (memory-mapped) cache file. If only modification time
+ * changed (e.g. after checkout) the hash decides.
+ */
+public class SnapshotCache {
+    private static final int MAGIC = 0x57544843; // "WTHC"
+    private static final int VERSION = 2;
+    private static final byte TRANSLATABLE = 1;
+    private static final byte MARKUP = 2;
+    private static final String DIGEST = "SHA-1";
+    private static final Path CACHE_DIR = Paths.get(System.getProperty("user.home"), ".webtools-trans-helper", "cache");
+
+    /**
+     * Cached rows of source file together with hash of its content.
+     */
+    public static class Entry {
+        private final byte[] hash;
+        private final List<TranslationString> rows;
+
+        private Entry(byte[] hash, List<TranslationString> rows) {
+            this.hash = hash;
+            this.rows = rows;
+        }
+
+        /**
+         * @return Hash of source file content.
+         */
+        public byte[] getHash() {
+            return hash;
+        }
+
+        /**
+         * @return Rows of source file.
+         */
+        public List<TranslationString> getRows() {
+            return rows;
+        }
+    }
+
+    /**
+     * @return New digest used for content hashes.
+     */
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(DIGEST);
+        } catch(NoSuchAlgorithmException nsae) {
+            throw new IllegalStateException(nsae);
+        }
+    }
+
+    /**
+     * Reads cached rows of source file.
+     * @param source Source XML file.
+     * @param fileName Name of file used in data rows.
+     * @return Cached entry or NULL if cache is missing or out of date.
+     */
+    public static Entry read(File source, String fileName) {
+        Path cache = getCacheFile(source);
+        if(!Files.exists(cache)) {
+            return null;
+        }
+
+        List<TranslationString> rows;
+        byte[] hash;
+        boolean touched;
+        BasicFileAttributes attrs;
+
+        try(FileChannel channel = FileChannel.open(cache, StandardOpenOption.READ)) {
+            attrs = Files.readAttributes(source.toPath(), BasicFileAttributes.class);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            // Header
+            if(buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                return null;
+            }
+            if(!source.getAbsolutePath().equals(readString(buffer))) {
+                return null;
+            }
+            long size = buffer.getLong();
+            long modified = buffer.getLong();
+            hash = new byte[readLength(buffer, 1)];
+            buffer.get(hash);
+            if(size != attrs.size()) {
+                return null;
+            }
+
+            touched = modified != attrs.lastModifiedTime().toMillis();
+            if(touched && !Arrays.equals(hash, hash(source))) {
+                return null;
+            }
+            // Rows (every row takes at least 9 bytes - flag and two lengths)
+            int count = readLength(buffer, 9);
+            rows = new ArrayList<>(count);
+            for(int i = 0; i < count; i++) {
+                byte flags = buffer.get();
+                String name = readString(buffer);
+                String text = readString(buffer);
+                TranslationString row = new TranslationString(name, text, fileName, (flags & TRANSLATABLE) != 0);
+                row.setMarkup((flags & MARKUP) != 0);
+                rows.add(row);
+            }
+        } catch(IOException | RuntimeException e) {
+            // Cache is broken - source file will be parsed
+            return null;
+        }
+
+        // Remember new modification time so the hash is not needed next time
+        if(touched) {
+            write(source, attrs, hash, rows);
+        }
+
+        return new Entry(hash, rows);
+    }
+
+    /**
+     * @param source Source XML file.
+     * @return Attributes of source file to be cached with its rows (they
+     *         have to be read before the file is parsed).
+     * @throws IOException
+     */
+    public static BasicFileAttributes readAttributes(File source) throws IOException {
+        return Files.readAttributes(source.toPath(), BasicFileAttributes.class);
+    }
+
+    /**
+     * Writes rows of source file into cache.
+     * @param source Source XML file.
+     * @param attrs Attributes of source file read before it was parsed
+     *              (or after it was written).
+     * @param hash Hash of the content the rows were read from (or written to).
+     * @param rows Rows of source file.
+     */
+    public static void write(File source, BasicFileAttributes attrs, byte[] hash, List<TranslationString> rows) {
+        Path cache = getCacheFile(source);
+        Path temp = null;
+
+        try {
+            Files.createDirectories(CACHE_DIR);
+            temp = Files.createTempFile(CACHE_DIR, cache.getFileName().toString(), ".tmp");
+            try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                // Header
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                writeString(out, source.getAbsolutePath());
+                out.writeLong(attrs.size());
+                out.writeLong(attrs.lastModifiedTime().toMillis());
+                out.writeInt(hash.length);
+                out.write(hash);
+                // Rows
+                out.writeInt(rows.size());
+                for(TranslationString row : rows) {
+                    out.writeByte((row.isTranslatable() ? TRANSLATABLE : 0) | (row.isMarkup() ? MARKUP : 0));
+                    writeString(out, row.getName());
+                    writeString(out, row.getText());
+                }
+            }
+            try {
+                Files.move(temp, cache, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch(AtomicMoveNotSupportedException amnse) {
+                Files.move(temp, cache, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch(IOException ioe) {
+            ioe.printStackTrace();
+            try {
+                if(temp != null) {
+                    Files.deleteIfExists(temp);
+                }
+            } catch(IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * @param file
+     * @return Hash of file content.
+     */
+    private static byte[] hash(File file) throws IOException {
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[64 * 1024];
+
+        try(InputStream in = new FileInputStream(file)) {
+            for(int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+                digest.update(buffer, 0, read);
+            }
+        }
+
+        return digest.digest();
+    }
+
+    /**
+     * @param source
+     * @return Path of cache file for given source file.
+     */
+    private static Path getCacheFile(File source) {
+        byte[] hash = newDigest().digest(source.getAbsolutePath().getBytes(StandardCharsets.UTF_8));
+        StringBuilder name = new StringBuilder();
+        for(byte b : hash) {
+            name.append(String.format("%02x", b));
+        }
+
+        return CACHE_DIR.resolve(name.append(".bin").toString());
+    }
+
+    /**
+     * @param buffer
+     * @return String
+     */
+    static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[readLength(buffer, 1)];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads length (or count) which is checked against remaining bytes so
+     * broken file can't cause huge allocation.
+     * @param buffer
+     * @param itemSize Minimal size of single item in bytes.
+     * @return Length
+     * @throws BufferUnderflowException If length is negative or items can't fit in buffer.
+     */
+    static int readLength(ByteBuffer buffer, int itemSize) {
+        int length = buffer.getInt();
+        if(length < 0 || length > buffer.remaining() / itemSize) {
+            throw new BufferUnderflowException();
+        }
+
+        return length;
+    }
+
+    /**
+     * @param out
+     * @param s
+     */
+    static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+}
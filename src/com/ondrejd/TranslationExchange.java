@@ -0,0 +1,721 @@
+/**
+ * @author Ondřej Doněk <ondrejd@gmail.com>
+ * @link https://github.com/ondrejd/webtools-trans-helper for the canonical source repository
+ * @license https://www.gnu.org/licenses/gpl-3.0.en.html GNU General Public License 3.0
+ */
+
+package com.ondrejd;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import javafx.application.Platform;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * Export and import of translations for outside translators (XLIFF 1.2,
+ * XLIFF 2.0 and CSV).
+ *
+ * Both directions are streamed - rows are written one by one and imported
+ * units are merged as they are read, so memory needed does not depend on
+ * size of exchanged file. Work is done by a background thread, imported
+ * translations are passed to JavaFX thread in batches.
+ */
+public class TranslationExchange {
+    private static final String SOURCE_LANGUAGE = "en";
+    private static final String XLIFF_12 = "urn:oasis:names:tc:xliff:document:1.2";
+    private static final String XLIFF_20 = "urn:oasis:names:tc:xliff:document:2.0";
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int BATCH_SIZE = 1000;
+    private static final XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+    private static final XMLOutputFactory outputFactory = XMLOutputFactory.newInstance();
+    private static final ExecutorService worker = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "translation-exchange");
+        t.setDaemon(true);
+        return t;
+    });
+
+    static {
+        // Exchanged files come from outside - no DTDs and external entities
+        inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    /**
+     * Format of exchanged file.
+     */
+    public enum Format {
+        XLIFF_12("XLIFF 1.2", "*.xlf"),
+        XLIFF_20("XLIFF 2.0", "*.xliff"),
+        CSV("CSV", "*.csv");
+
+        private final String label;
+        private final String extension;
+
+        Format(String label, String extension) {
+            this.label = label;
+            this.extension = extension;
+        }
+
+        /**
+         * @return File name pattern (e.g. <code>*.csv</code>).
+         */
+        public String getExtension() {
+            return extension;
+        }
+
+        /**
+         * @param path
+         * @return Format by extension of file (XLIFF 1.2 if it is not known).
+         */
+        public static Format of(Path path) {
+            String name = path.getFileName().toString().toLowerCase(Locale.ROOT);
+            for(Format format : values()) {
+                if(name.endsWith(format.extension.substring(1))) {
+                    return format;
+                }
+            }
+
+            return XLIFF_12;
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    /**
+     * Exports rows in background.
+     * @param rows Rows to export (must be called on JavaFX thread).
+     * @param all All data rows (source texts are looked up in them).
+     * @param target
+     * @param format
+     * @param onDone Called on JavaFX thread with count of exported rows (-1 on error).
+     */
+    public static void export(List<TranslationString> rows, List<TranslationString> all, Path target, Format format, Consumer<Integer> onDone) {
+        // Texts are copied so rows can be edited during export
+        TranslationString[] snapshot = rows.toArray(new TranslationString[rows.size()]);
+        String[] texts = new String[snapshot.length];
+        for(int i = 0; i < snapshot.length; i++) {
+            texts[i] = snapshot[i].getText();
+        }
+        TranslationString[] sourceRows = all.stream()
+                .filter(n -> "".equals(LocaleAlignment.getLocale(n)))
+                .toArray(TranslationString[]::new);
+        String[] sourceTexts = Arrays.stream(sourceRows).map(TranslationString::getText).toArray(String[]::new);
+
+        worker.execute(() -> {
+            int count = -1;
+            long start = Metrics.start();
+            try {
+                Map<String, String> sources = new HashMap<>(sourceRows.length * 2);
+                for(int i = 0; i < sourceRows.length; i++) {
+                    sources.put(LocaleAlignment.getKey(sourceRows[i]), sourceTexts[i]);
+                }
+                write(target, format, Arrays.asList(snapshot), Arrays.asList(texts), sources);
+                count = snapshot.length;
+                Metrics.record(Metrics.Kind.EXPORT, start, Files.size(target), count, target.getFileName().toString());
+            } catch(IOException | XMLStreamException e) {
+                e.printStackTrace();
+            }
+
+            int exported = count;
+            Platform.runLater(() -> onDone.accept(exported));
+        });
+    }
+
+    /**
+     * Imports translations in background. Units are merged with rows by
+     * file and name, only translatable rows whose text differs are changed.
+     * Whole file is read before any row is changed, rows which were removed
+     * or edited since the import started are skipped.
+     * @param source
+     * @param rows Data rows (must be called on JavaFX thread).
+     * @param onChange Called on JavaFX thread with row and its new text.
+     * @param onDone Called on JavaFX thread with count of changed rows (-1 on error, nothing is changed then).
+     */
+    public static void importFile(Path source, ObservableList<TranslationString> rows, BiConsumer<TranslationString, String> onChange, Consumer<Integer> onDone) {
+        TranslationString[] snapshot = rows.toArray(new TranslationString[rows.size()]);
+        String[] texts = new String[snapshot.length];
+        for(int i = 0; i < snapshot.length; i++) {
+            texts[i] = snapshot[i].getText();
+        }
+
+        // Rows removed from data while the import runs must not be changed
+        Set<TranslationString> removed = Collections.newSetFromMap(new IdentityHashMap<>());
+        ListChangeListener<TranslationString> listener = c -> {
+            while(c.next()) {
+                removed.addAll(c.getRemoved());
+                removed.removeAll(c.getAddedSubList());
+            }
+        };
+        rows.addListener(listener);
+
+        worker.execute(() -> {
+            long start = Metrics.start();
+            List<Integer> ids = new ArrayList<>();
+            List<String> imported = new ArrayList<>();
+            try {
+                Map<String, Integer> keys = new HashMap<>(snapshot.length * 2);
+                for(int i = 0; i < snapshot.length; i++) {
+                    keys.put(snapshot[i].getFile() + '\u0000' + snapshot[i].getName(), i);
+                }
+
+                int[] units = {0};
+                read(source, (file, name, text) -> {
+                    units[0]++;
+                    Integer id = keys.get(file + '\u0000' + name);
+                    // Untranslated units do not clear existing translations
+                    if(id == null || !snapshot[id].isTranslatable() || text.isEmpty() || text.equals(texts[id])) {
+                        return;
+                    }
+
+                    ids.add(id);
+                    imported.add(text);
+                });
+                Metrics.record(Metrics.Kind.IMPORT, start, Files.size(source), units[0], source.getFileName().toString());
+            } catch(IOException | XMLStreamException e) {
+                e.printStackTrace();
+                Platform.runLater(() -> {
+                    rows.removeListener(listener);
+                    onDone.accept(-1);
+                });
+                return;
+            }
+
+            int[] changed = {0};
+            for(int from = 0; from < ids.size(); from += BATCH_SIZE) {
+                int to = Math.min(from + BATCH_SIZE, ids.size());
+                int[] batch = ids.subList(from, to).stream().mapToInt(Integer::intValue).toArray();
+                String[] batchTexts = imported.subList(from, to).toArray(new String[to - from]);
+                Platform.runLater(() -> {
+                    for(int i = 0; i < batch.length; i++) {
+                        TranslationString row = snapshot[batch[i]];
+                        if(removed.contains(row) || !texts[batch[i]].equals(row.getText())) {
+                            continue;
+                        }
+
+                        onChange.accept(row, batchTexts[i]);
+                        changed[0]++;
+                    }
+                });
+            }
+
+            Platform.runLater(() -> {
+                rows.removeListener(listener);
+                onDone.accept(changed[0]);
+            });
+        });
+    }
+
+    /**
+     * Imported unit.
+     */
+    @FunctionalInterface
+    interface UnitConsumer {
+        void accept(String file, String name, String text);
+    }
+
+    /**
+     * Writes rows into temporary file which then replaces target.
+     * @param target
+     * @param format
+     * @param rows
+     * @param texts Texts of rows.
+     * @param sources Source texts by key (see {@link LocaleAlignment#getKey}).
+     * @throws IOException
+     * @throws XMLStreamException
+     */
+    static void write(Path target, Format format, List<TranslationString> rows, List<String> texts, Map<String, String> sources) throws IOException, XMLStreamException {
+        Path dir = target.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(dir, target.getFileName().toString(), ".tmp");
+        try {
+            try(FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                Writer writer = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), BUFFER_SIZE), BUFFER_SIZE);
+                if(format != Format.CSV) {
+                    // XLIFF needs one file element per original file
+                    List<Integer> order = groupByFile(rows);
+                    rows = order.stream().map(rows::get).collect(Collectors.toList());
+                    texts = order.stream().map(texts::get).collect(Collectors.toList());
+                }
+                switch(format) {
+                    case CSV:
+                        writeCsv(writer, rows, texts, sources);
+                        break;
+                    case XLIFF_20:
+                        writeXliff20(writer, rows, texts, sources);
+                        break;
+                    default:
+                        writeXliff12(writer, rows, texts, sources);
+                        break;
+                }
+                writer.flush();
+                channel.force(false);
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch(AtomicMoveNotSupportedException amnse) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * @param rows
+     * @return Indexes of rows ordered so rows of one file follow each other
+     *         (files in order of their first row, rows keep their order).
+     */
+    private static List<Integer> groupByFile(List<TranslationString> rows) {
+        Map<String, List<Integer>> files = new LinkedHashMap<>();
+        for(int i = 0; i < rows.size(); i++) {
+            files.computeIfAbsent(rows.get(i).getFile(), k -> new ArrayList<>()).add(i);
+        }
+
+        List<Integer> order = new ArrayList<>(rows.size());
+        files.values().forEach(order::addAll);
+        return order;
+    }
+
+    /**
+     * @param writer
+     * @param rows
+     * @param texts
+     * @param sources
+     * @throws IOException
+     */
+    private static void writeCsv(Writer writer, List<TranslationString> rows, List<String> texts, Map<String, String> sources) throws IOException {
+        writer.write("file,name,source,target\n");
+        for(int i = 0; i < rows.size(); i++) {
+            TranslationString row = rows.get(i);
+            writer.write(CommandLine.csv(row.getFile()));
+            writer.write(',');
+            writer.write(CommandLine.csv(row.getName()));
+            writer.write(',');
+            writer.write(CommandLine.csv(getSource(row, texts.get(i), sources)));
+            writer.write(',');
+            writer.write(CommandLine.csv(texts.get(i)));
+            writer.write('\n');
+        }
+    }
+
+    /**
+     * @param writer
+     * @param rows
+     * @param texts
+     * @param sources
+     * @throws XMLStreamException
+     */
+    private static void writeXliff12(Writer writer, List<TranslationString> rows, List<String> texts, Map<String, String> sources) throws XMLStreamException {
+        XMLStreamWriter xml = outputFactory.createXMLStreamWriter(writer);
+        xml.writeStartDocument("UTF-8", "1.0");
+        xml.writeCharacters("\n");
+        xml.writeStartElement("xliff");
+        xml.writeDefaultNamespace(XLIFF_12);
+        xml.writeAttribute("version", "1.2");
+
+        // Rows are grouped by file - new file element starts whenever file
+        // changes
+        String file = null;
+        for(int i = 0; i < rows.size(); i++) {
+            TranslationString row = rows.get(i);
+            if(!row.getFile().equals(file)) {
+                if(file != null) {
+                    xml.writeCharacters("\n    ");
+                    xml.writeEndElement();
+                    xml.writeCharacters("\n  ");
+                    xml.writeEndElement();
+                }
+                file = row.getFile();
+                xml.writeCharacters("\n  ");
+                xml.writeStartElement("file");
+                xml.writeAttribute("original", file);
+                xml.writeAttribute("datatype", "xml");
+                xml.writeAttribute("source-language", SOURCE_LANGUAGE);
+                String language = getLanguage(row);
+                if(language != null) {
+                    xml.writeAttribute("target-language", language);
+                }
+                xml.writeCharacters("\n    ");
+                xml.writeStartElement("body");
+            }
+
+            xml.writeCharacters("\n      ");
+            xml.writeStartElement("trans-unit");
+            xml.writeAttribute("id", row.getName());
+            if(!row.isTranslatable()) {
+                xml.writeAttribute("translate", "no");
+            }
+            xml.writeStartElement("source");
+            xml.writeCharacters(getSource(row, texts.get(i), sources));
+            xml.writeEndElement();
+            xml.writeStartElement("target");
+            xml.writeCharacters(texts.get(i));
+            xml.writeEndElement();
+            xml.writeEndElement();
+        }
+        if(file != null) {
+            xml.writeCharacters("\n    ");
+            xml.writeEndElement();
+            xml.writeCharacters("\n  ");
+            xml.writeEndElement();
+        }
+
+        xml.writeCharacters("\n");
+        xml.writeEndElement();
+        xml.writeCharacters("\n");
+        xml.writeEndDocument();
+        xml.flush();
+    }
+
+    /**
+     * @param writer
+     * @param rows
+     * @param texts
+     * @param sources
+     * @throws XMLStreamException
+     */
+    private static void writeXliff20(Writer writer, List<TranslationString> rows, List<String> texts, Map<String, String> sources) throws XMLStreamException {
+        XMLStreamWriter xml = outputFactory.createXMLStreamWriter(writer);
+        xml.writeStartDocument("UTF-8", "1.0");
+        xml.writeCharacters("\n");
+        xml.writeStartElement("xliff");
+        xml.writeDefaultNamespace(XLIFF_20);
+        xml.writeAttribute("version", "2.0");
+        xml.writeAttribute("srcLang", SOURCE_LANGUAGE);
+        // Target language is common for the whole document - the first
+        // translated row decides
+        for(TranslationString row : rows) {
+            String language = getLanguage(row);
+            if(language != null) {
+                xml.writeAttribute("trgLang", language);
+                break;
+            }
+        }
+
+        String file = null;
+        int files = 0;
+        for(int i = 0; i < rows.size(); i++) {
+            TranslationString row = rows.get(i);
+            if(!row.getFile().equals(file)) {
+                if(file != null) {
+                    xml.writeCharacters("\n  ");
+                    xml.writeEndElement();
+                }
+                file = row.getFile();
+                xml.writeCharacters("\n  ");
+                xml.writeStartElement("file");
+                xml.writeAttribute("id", "f" + (++files));
+                xml.writeAttribute("original", file);
+            }
+
+            // Unit ids have to be NMTOKENs, Android name is kept as name
+            xml.writeCharacters("\n    ");
+            xml.writeStartElement("unit");
+            xml.writeAttribute("id", "u" + (i + 1));
+            xml.writeAttribute("name", row.getName());
+            if(!row.isTranslatable()) {
+                xml.writeAttribute("translate", "no");
+            }
+            xml.writeStartElement("segment");
+            xml.writeStartElement("source");
+            xml.writeCharacters(getSource(row, texts.get(i), sources));
+            xml.writeEndElement();
+            xml.writeStartElement("target");
+            xml.writeCharacters(texts.get(i));
+            xml.writeEndElement();
+            xml.writeEndElement();
+            xml.writeEndElement();
+        }
+        if(file != null) {
+            xml.writeCharacters("\n  ");
+            xml.writeEndElement();
+        }
+
+        xml.writeCharacters("\n");
+        xml.writeEndElement();
+        xml.writeCharacters("\n");
+        xml.writeEndDocument();
+        xml.flush();
+    }
+
+    /**
+     * @param row
+     * @param text Text of row.
+     * @param sources
+     * @return Source text of row (its own text if there is none).
+     */
+    private static String getSource(TranslationString row, String text, Map<String, String> sources) {
+        String locale = LocaleAlignment.getLocale(row);
+        String source = locale == null || locale.isEmpty() ? null : sources.get(LocaleAlignment.getKey(row));
+        return source == null ? text : source;
+    }
+
+    /**
+     * @param row
+     * @return Language tag of row locale (e.g. <code>pt-BR</code> for
+     *         <code>values-pt-rBR</code>) or NULL for source locale.
+     */
+    private static String getLanguage(TranslationString row) {
+        String locale = LocaleAlignment.getLocale(row);
+        if(locale == null || locale.isEmpty()) {
+            return null;
+        }
+
+        if(locale.startsWith("b+")) {
+            return locale.substring(2).replace('+', '-');
+        }
+        return locale.replace("-r", "-");
+    }
+
+    /**
+     * Reads units of XLIFF (1.2 or 2.0) or CSV file.
+     * @param source
+     * @param consumer Called with file, name and translation of every unit.
+     * @throws IOException
+     * @throws XMLStreamException
+     */
+    static void read(Path source, UnitConsumer consumer) throws IOException, XMLStreamException {
+        try(FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+            if(Format.of(source) == Format.CSV) {
+                readCsv(new BufferedReader(Channels.newReader(channel, StandardCharsets.UTF_8.newDecoder(), BUFFER_SIZE), BUFFER_SIZE), consumer);
+            } else {
+                readXliff(new BufferedInputStream(Channels.newInputStream(channel), BUFFER_SIZE), consumer);
+            }
+        }
+    }
+
+    /**
+     * Reads XLIFF 1.2 (<code>file/body/trans-unit/target</code>) or 2.0
+     * (<code>file/unit/segment/target</code>). Other targets (e.g. in
+     * <code>alt-trans</code> or <code>mtc:match</code>) are only
+     * suggestions and are skipped.
+     * @param in
+     * @param consumer
+     * @throws XMLStreamException
+     */
+    private static void readXliff(InputStream in, UnitConsumer consumer) throws XMLStreamException {
+        XMLStreamReader reader = inputFactory.createXMLStreamReader(in);
+        try {
+            String file = null;
+            String name = null;
+            StringBuilder target = null;
+            // Names of open elements (empty for elements outside of XLIFF namespace)
+            List<String> path = new ArrayList<>();
+            while(reader.hasNext()) {
+                int event = reader.next();
+                if(event == XMLStreamConstants.START_ELEMENT) {
+                    String element = isXliff(reader.getNamespaceURI()) ? reader.getLocalName() : "";
+                    String parent = path.isEmpty() ? "" : path.get(path.size() - 1);
+                    if(element.equals("target")) {
+                        // Target is read with its end element
+                        if(parent.equals("trans-unit") || parent.equals("segment")) {
+                            // Segments of unit are joined
+                            target = target == null ? new StringBuilder() : target;
+                            target.append(readText(reader));
+                        } else {
+                            readText(reader);
+                        }
+                        continue;
+                    }
+                    path.add(element);
+                    switch(element) {
+                        case "file":
+                            file = reader.getAttributeValue(null, "original");
+                            break;
+                        case "trans-unit":
+                            name = getAttribute(reader, "resname", "id");
+                            break;
+                        case "unit":
+                            name = getAttribute(reader, "name", "id");
+                            break;
+                        default:
+                            break;
+                    }
+                } else if(event == XMLStreamConstants.END_ELEMENT) {
+                    String element = path.remove(path.size() - 1);
+                    if(element.equals("trans-unit") || element.equals("unit")) {
+                        if(file != null && name != null && target != null) {
+                            consumer.accept(file, name, target.toString());
+                        }
+                        name = null;
+                        target = null;
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * @param namespace
+     * @return Returns TRUE if namespace is XLIFF 1.2 or 2.0 namespace.
+     */
+    private static boolean isXliff(String namespace) {
+        return XLIFF_12.equals(namespace) || XLIFF_20.equals(namespace);
+    }
+
+    /**
+     * @param reader
+     * @param names Names of attributes (the first present one is returned).
+     * @return Attribute value or NULL.
+     */
+    private static String getAttribute(XMLStreamReader reader, String... names) {
+        for(String name : names) {
+            String value = reader.getAttributeValue(null, name);
+            if(value != null) {
+                return value;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Reads text of current element (inline elements are skipped but their
+     * text is kept).
+     * @param reader Reader positioned on start element.
+     * @return String
+     * @throws XMLStreamException
+     */
+    private static String readText(XMLStreamReader reader) throws XMLStreamException {
+        StringBuilder text = new StringBuilder();
+        int depth = 1;
+
+        while(depth > 0) {
+            switch(reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    depth++;
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    depth--;
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    text.append(reader.getText());
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        return text.toString();
+    }
+
+    /**
+     * Reads CSV with header. Columns <code>file</code>, <code>name</code>
+     * and <code>target</code> (or <code>text</code> written by command
+     * line export) are used.
+     * @param reader
+     * @param consumer
+     * @throws IOException
+     */
+    private static void readCsv(Reader reader, UnitConsumer consumer) throws IOException {
+        List<String> record = new ArrayList<>();
+        if(!readCsvRecord(reader, record)) {
+            return;
+        }
+        if(record.get(0).startsWith("\uFEFF")) {
+            // Byte order mark (written by spreadsheets)
+            record.set(0, record.get(0).substring(1));
+        }
+
+        int file = record.indexOf("file");
+        int name = record.indexOf("name");
+        int target = record.indexOf("target") >= 0 ? record.indexOf("target") : record.indexOf("text");
+        if(file < 0 || name < 0 || target < 0) {
+            throw new IOException("CSV musí mít sloupce file, name a target");
+        }
+
+        int columns = Math.max(file, Math.max(name, target));
+        while(readCsvRecord(reader, record)) {
+            if(record.size() > columns) {
+                consumer.accept(record.get(file), record.get(name), record.get(target));
+            }
+        }
+    }
+
+    /**
+     * Reads one CSV record (quoted fields may contain new lines).
+     * @param reader
+     * @param record Cleared and filled with fields.
+     * @return Returns FALSE at the end of input.
+     * @throws IOException
+     */
+    private static boolean readCsvRecord(Reader reader, List<String> record) throws IOException {
+        record.clear();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        boolean any = false;
+
+        for(int c = reader.read(); c >= 0; c = reader.read()) {
+            any = true;
+            if(quoted) {
+                if(c == '"') {
+                    reader.mark(1);
+                    if(reader.read() == '"') {
+                        field.append('"');
+                    } else {
+                        reader.reset();
+                        quoted = false;
+                    }
+                } else {
+                    field.append((char) c);
+                }
+            } else if(c == '"') {
+                quoted = true;
+            } else if(c == ',') {
+                record.add(field.toString());
+                field.setLength(0);
+            } else if(c == '\n') {
+                record.add(field.toString());
+                return true;
+            } else if(c != '\r') {
+                field.append((char) c);
+            }
+        }
+
+        if(any) {
+            record.add(field.toString());
+        }
+        return any;
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ * @author Ondřej Doněk <ondrejd@gmail.com>
+ * @link https://github.com/ondrejd/webtools-trans-helper for the canonical source repository
+ * @license https://www.gnu.org/licenses/gpl-3.0.en.html GNU General Public License 3.0
+ */
+
+package com.ondrejd;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+
+/**
+ * Indexes of data rows by name and by file.
+ *
+ * Indexes are kept up to date with the data list (rows are loaded
+ * progressively). Rows in each index are in order they were added to data
+ * (which is order of the data list unless rows were inserted by a merge).
+ * Removed rows are dropped in one pass per change.
+ */
+public class TranslationIndex {
+    private final Map<String, List<TranslationString>> byName = new HashMap<>();
+    private final Map<String, List<TranslationString>> byFile = new HashMap<>();
+
+    /**
+     * Constructor
+     * @param data Data rows.
+     */
+    public TranslationIndex(ObservableList<TranslationString> data) {
+        data.forEach(this::add);
+        data.addListener((ListChangeListener.Change<? extends TranslationString> c) -> {
+            while(c.next()) {
+                if(c.wasRemoved()) {
+                    remove(c.getRemoved());
+                }
+                if(c.wasAdded()) {
+                    c.getAddedSubList().forEach(this::add);
+                }
+            }
+        });
+    }
+
+    /**
+     * @param name
+     * @return Rows with given name.
+     */
+    public List<TranslationString> getByName(String name) {
+        return byName.getOrDefault(name, Collections.emptyList());
+    }
+
+    /**
+     * @param file
+     * @return Rows from given file.
+     */
+    public List<TranslationString> getByFile(String file) {
+        return byFile.getOrDefault(file, Collections.emptyList());
+    }
+
+    /**
+     * @param row
+     */
+    private void add(TranslationString row) {
+        byName.computeIfAbsent(row.getName(), k -> new ArrayList<>()).add(row);
+        byFile.computeIfAbsent(row.getFile(), k -> new ArrayList<>()).add(row);
+    }
+
+    /**
+     * @param removed
+     */
+    private void remove(List<? extends TranslationString> removed) {
+        Set<TranslationString> rows = Collections.newSetFromMap(new IdentityHashMap<>(removed.size() * 2));
+        rows.addAll(removed);
+        remove(byName, rows, TranslationString::getName);
+        remove(byFile, rows, TranslationString::getFile);
+    }
+
+    /**
+     * Removes rows from lists of their keys (every list is filtered once).
+     * @param index
+     * @param removed
+     * @param key
+     */
+    private static void remove(Map<String, List<TranslationString>> index, Set<TranslationString> removed, Function<TranslationString, String> key) {
+        Set<String> keys = new HashSet<>();
+        removed.forEach(n -> keys.add(key.apply(n)));
+        for(String k : keys) {
+            List<TranslationString> rows = index.get(k);
+            if(rows == null) {
+                continue;
+            }
+
+            rows.removeIf(removed::contains);
+            if(rows.isEmpty()) {
+                index.remove(k);
+            }
+        }
+    }
+}
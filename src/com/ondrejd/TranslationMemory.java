@@ -0,0 +1,593 @@
+/**
+ * @author Ondřej Doněk <ondrejd@gmail.com>
+ * @link https://github.com/ondrejd/webtools-trans-helper for the canonical source repository
+ * @license https://www.gnu.org/licenses/gpl-3.0.en.html GNU General Public License 3.0
+ */
+
+package com.ondrejd;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import javafx.application.Platform;
+
+/**
+ * Translation memory - pairs of source text and its translation collected
+ * from all loaded rows and edits, persisted between sessions.
+ *
+ * Every row (file and name) refers to a single entry - the latest
+ * translation of the row, so intermediate edits are forgotten. Entries
+ * not referred by any row are dropped and when there are too many of them
+ * the least recently used ones are evicted.
+ *
+ * Suggestions are looked up in two steps. Entries sharing the most
+ * trigrams with the source text are taken as candidates (using an inverted
+ * index), then candidates are scored by edit distance which is computed
+ * only up to the distance that still passes the similarity threshold.
+ * The memory is owned by a single worker thread so lookups never block
+ * the JavaFX thread, results are passed back by {@link Platform#runLater}.
+ */
+public class TranslationMemory {
+    private static final int MAGIC = 0x5754484D; // "WTHM"
+    private static final int VERSION = 2;
+    private static final Path MEMORY_FILE = Paths.get(System.getProperty("user.home"), ".webtools-trans-helper", "memory.bin");
+    private static final int CANDIDATES = 50;
+    private static final double MIN_SIMILARITY = 0.5;
+    private static final int MAX_ENTRIES = 500000;
+
+    /**
+     * Suggested translation.
+     */
+    public static class Suggestion {
+        private final String source;
+        private final String text;
+        private final double similarity;
+
+        private Suggestion(String source, String text, double similarity) {
+            this.source = source;
+            this.text = text;
+            this.similarity = similarity;
+        }
+
+        /**
+         * @return Source text of memory entry.
+         */
+        public String getSource() {
+            return source;
+        }
+
+        /**
+         * @return Translation of memory entry.
+         */
+        public String getText() {
+            return text;
+        }
+
+        /**
+         * @return Similarity of source texts (0 - 1).
+         */
+        public double getSimilarity() {
+            return similarity;
+        }
+
+        @Override
+        public String toString() {
+            return Math.round(similarity * 100) + " %  " + text;
+        }
+    }
+
+    // Entries (accessed only by worker thread), removed entries are NULL
+    // until the memory is compacted
+    private final List<String> sources = new ArrayList<>();
+    private List<String> keys = new ArrayList<>();
+    private final List<String> texts = new ArrayList<>();
+    private final List<String> locales = new ArrayList<>();
+    // Count of rows referring to entry and sequence of its last use
+    private int[] refs = new int[1024];
+    private int[] used = new int[1024];
+    private int useSequence = 0;
+    private int removed = 0;
+    // Entry by source, translation and locale
+    private final Map<String, Integer> entries = new HashMap<>();
+    // Entry of row by file and name
+    private final Map<String, Map<String, Integer>> rows = new HashMap<>();
+    private TrigramMap postings = new TrigramMap();
+    private int[] counts = new int[1024];
+    private boolean changed = false;
+
+    private final Path file;
+    private final ExecutorService worker;
+    private final AtomicLong lastRequest = new AtomicLong();
+
+    /**
+     * Constructor - starts loading of persisted memory in background.
+     */
+    public TranslationMemory() {
+        this(MEMORY_FILE);
+    }
+
+    /**
+     * @param file File the memory is persisted in.
+     */
+    TranslationMemory(Path file) {
+        this.file = file;
+        // Worker is not daemon so the memory is saved even after the JavaFX
+        // toolkit exits
+        worker = Executors.newSingleThreadExecutor(r -> {
+            return new Thread(r, "translation-memory");
+        });
+        worker.execute(this::read);
+    }
+
+    /**
+     * Adds translations of rows to memory.
+     * @param entries Source text, translation, locale, file and name of rows.
+     */
+    public void addAll(List<String[]> entries) {
+        if(entries.isEmpty() || worker.isShutdown()) {
+            return;
+        }
+
+        worker.execute(() -> entries.forEach(n -> add(n[0], n[1], n[2], n[3], n[4])));
+    }
+
+    /**
+     * Looks up translations of similar source texts. Only the latest
+     * request is answered, older ones are dropped.
+     * @param source Source text.
+     * @param locale Locale of translations.
+     * @param exclude Translation which should not be suggested (current text).
+     * @param callback Called on JavaFX thread with best suggestions.
+     * @param limit Maximal count of suggestions.
+     */
+    public void suggest(String source, String locale, String exclude, int limit, Consumer<List<Suggestion>> callback) {
+        long request = lastRequest.incrementAndGet();
+        if(worker.isShutdown()) {
+            return;
+        }
+
+        worker.execute(() -> {
+            if(request != lastRequest.get()) {
+                return;
+            }
+
+            List<Suggestion> suggestions = lookup(source, locale == null ? "" : locale, exclude, limit);
+            Platform.runLater(() -> {
+                if(request == lastRequest.get()) {
+                    callback.accept(suggestions);
+                }
+            });
+        });
+    }
+
+    /**
+     * Looks up translations of similar source texts and waits for them.
+     * @param source
+     * @param locale
+     * @param limit
+     * @return Best suggestions (most similar first).
+     * @throws Exception
+     */
+    List<Suggestion> suggestNow(String source, String locale, int limit) throws Exception {
+        return worker.submit(() -> lookup(source, locale, null, limit)).get();
+    }
+
+    /**
+     * Cancels pending request for suggestions.
+     */
+    public void cancel() {
+        lastRequest.incrementAndGet();
+    }
+
+    /**
+     * Saves memory and stops the worker. Does not wait for the save.
+     */
+    public void close() {
+        cancel();
+        if(!worker.isShutdown()) {
+            worker.execute(this::write);
+            worker.shutdown();
+        }
+    }
+
+    /**
+     * @param s Folded text.
+     * @return Text padded so even short texts have a trigram.
+     */
+    private static String pad(String s) {
+        return " " + s + " ";
+    }
+
+    /**
+     * Sets translation of row - entry of its previous translation is
+     * dropped if no other row refers to it.
+     * @param source
+     * @param text
+     * @param locale
+     * @param file File of row.
+     * @param name Name of row.
+     */
+    private void add(String source, String text, String locale, String file, String name) {
+        if(source == null || source.isEmpty() || text == null || text.isEmpty() || file == null || name == null) {
+            return;
+        }
+
+        locale = locale == null ? "" : locale;
+        Integer entry = entries.get(getId(source, text, locale));
+        Map<String, Integer> names = rows.computeIfAbsent(file, k -> new HashMap<>());
+        Integer previous = names.get(name);
+        if(entry != null && entry.equals(previous)) {
+            used[entry] = ++useSequence;
+            return;
+        }
+
+        if(entry == null) {
+            entry = append(source, text, locale);
+        }
+        refs[entry]++;
+        used[entry] = ++useSequence;
+        names.put(name, entry);
+        if(previous != null && --refs[previous] == 0) {
+            remove(previous);
+        }
+        changed = true;
+
+        if(sources.size() - removed > MAX_ENTRIES || (removed > 1024 && removed * 2 > sources.size())) {
+            compact();
+        }
+    }
+
+    /**
+     * @param source
+     * @param text
+     * @param locale
+     * @return Identity of entry.
+     */
+    private static String getId(String source, String text, String locale) {
+        return source + '\u0000' + text + '\u0000' + locale;
+    }
+
+    /**
+     * Appends new entry (with no references).
+     * @param source
+     * @param text
+     * @param locale
+     * @return Index of entry.
+     */
+    private int append(String source, String text, String locale) {
+        int n = sources.size();
+        String key = pad(SearchIndex.fold(source));
+        sources.add(source);
+        keys.add(key);
+        texts.add(text);
+        locales.add(locale);
+        entries.put(getId(source, text, locale), n);
+        if(refs.length == n) {
+            refs = Arrays.copyOf(refs, n * 2);
+            used = Arrays.copyOf(used, n * 2);
+        }
+        refs[n] = 0;
+        for(int i = 0; i + 3 <= key.length(); i++) {
+            postings.getOrCreate(TrigramMap.trigram(key, i)).add(n);
+        }
+
+        return n;
+    }
+
+    /**
+     * Removes entry (it stays in posting lists until the memory is compacted).
+     * @param entry
+     */
+    private void remove(int entry) {
+        entries.remove(getId(sources.get(entry), texts.get(entry), locales.get(entry)));
+        sources.set(entry, null);
+        keys.set(entry, null);
+        texts.set(entry, null);
+        locales.set(entry, null);
+        removed++;
+    }
+
+    /**
+     * Drops removed entries and evicts the least recently used ones if
+     * there are too many of them. Indexes are built again.
+     */
+    private void compact() {
+        int live = sources.size() - removed;
+        // Eviction makes room for a tenth of the limit so it does not run
+        // with every added entry
+        int minUsed = 0;
+        if(live > MAX_ENTRIES) {
+            int[] uses = new int[live];
+            for(int i = 0, j = 0; i < sources.size(); i++) {
+                if(texts.get(i) != null) {
+                    uses[j++] = used[i];
+                }
+            }
+            Arrays.sort(uses);
+            minUsed = uses[live - MAX_ENTRIES * 9 / 10];
+        }
+
+        int[] moved = new int[sources.size()];
+        List<String[]> kept = new ArrayList<>(Math.min(live, MAX_ENTRIES));
+        int[] keptUsed = new int[Math.max(1024, live * 2)];
+        for(int i = 0; i < sources.size(); i++) {
+            if(texts.get(i) == null || used[i] < minUsed) {
+                moved[i] = -1;
+            } else {
+                moved[i] = kept.size();
+                keptUsed[kept.size()] = used[i];
+                kept.add(new String[] {sources.get(i), texts.get(i), locales.get(i)});
+            }
+        }
+
+        sources.clear();
+        keys = new ArrayList<>(kept.size());
+        texts.clear();
+        locales.clear();
+        entries.clear();
+        postings = new TrigramMap();
+        refs = new int[keptUsed.length];
+        used = keptUsed;
+        kept.forEach(n -> append(n[0], n[1], n[2]));
+        removed = 0;
+
+        // Rows of evicted entries are forgotten
+        rows.values().forEach(names -> {
+            names.replaceAll((k, v) -> moved[v]);
+            names.values().removeIf(v -> v < 0);
+            names.values().forEach(v -> refs[v]++);
+        });
+        rows.values().removeIf(Map::isEmpty);
+    }
+
+    /**
+     * @param source
+     * @param locale
+     * @param exclude
+     * @param limit
+     * @return Best suggestions (most similar first).
+     */
+    private List<Suggestion> lookup(String source, String locale, String exclude, int limit) {
+        List<Suggestion> result = new ArrayList<>();
+        if(source == null || source.isEmpty()) {
+            return result;
+        }
+
+        String key = pad(SearchIndex.fold(source));
+        if(counts.length < sources.size()) {
+            counts = new int[Math.max(sources.size(), counts.length * 2)];
+        }
+
+        // Count trigrams shared with every entry
+        int[] touched = new int[64];
+        int touchedSize = 0;
+        int trigrams = 0;
+        for(int i = 0; i + 3 <= key.length(); i++) {
+            IntList list = postings.get(TrigramMap.trigram(key, i));
+            trigrams++;
+            if(list == null) {
+                continue;
+            }
+            for(int j = 0; j < list.size(); j++) {
+                int id = list.get(j);
+                if(counts[id]++ == 0) {
+                    if(touchedSize == touched.length) {
+                        touched = Arrays.copyOf(touched, touchedSize * 2);
+                    }
+                    touched[touchedSize++] = id;
+                }
+            }
+        }
+
+        // Find the least count of shared trigrams a candidate must have
+        int[] histogram = new int[trigrams + 1];
+        for(int i = 0; i < touchedSize; i++) {
+            int id = touched[i];
+            counts[id] = Math.min(counts[id], trigrams);
+            if(texts.get(id) != null && locales.get(id).equals(locale) && !texts.get(id).equals(exclude)) {
+                histogram[counts[id]]++;
+            } else {
+                counts[id] = 0;
+            }
+        }
+        int threshold = trigrams;
+        for(int total = histogram[threshold]; threshold > 1 && total < CANDIDATES; ) {
+            total += histogram[--threshold];
+        }
+
+        // Entries with most shared trigrams become candidates (counts are
+        // reset on the way)
+        int[] candidates = new int[CANDIDATES];
+        int size = 0;
+        int ties = CANDIDATES;
+        for(int i = threshold + 1; i <= trigrams; i++) {
+            ties -= histogram[i];
+        }
+        for(int i = 0; i < touchedSize; i++) {
+            int id = touched[i];
+            int count = counts[id];
+            counts[id] = 0;
+            if(count > threshold || (count == threshold && count > 0 && ties-- > 0)) {
+                if(size < candidates.length) {
+                    candidates[size++] = id;
+                }
+            }
+        }
+
+        List<Suggestion> scored = new ArrayList<>();
+        for(int i = 0; i < size; i++) {
+            int id = candidates[i];
+            String other = keys.get(id);
+            int length = Math.max(key.length(), other.length()) - 2;
+            int maxDistance = (int) Math.floor(length * (1 - MIN_SIMILARITY));
+            int distance = distance(key, other, maxDistance);
+            if(distance <= maxDistance) {
+                double similarity = length == 0 ? 1 : 1 - (double) distance / length;
+                scored.add(new Suggestion(sources.get(id), texts.get(id), similarity));
+            }
+        }
+
+        // Best suggestions, the same translation is suggested once
+        scored.sort((a, b) -> Double.compare(b.getSimilarity(), a.getSimilarity()));
+        for(Suggestion suggestion : scored) {
+            if(result.size() >= limit) {
+                break;
+            }
+            if(result.stream().noneMatch(n -> n.getText().equals(suggestion.getText()))) {
+                result.add(suggestion);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Computes edit (Levenshtein) distance of two strings.
+     * @param a
+     * @param b
+     * @param max Computation stops once the distance exceeds this value.
+     * @return Distance or <code>max + 1</code> if it is greater than max.
+     */
+    static int distance(String a, String b, int max) {
+        if(Math.abs(a.length() - b.length()) > max) {
+            return max + 1;
+        }
+
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for(int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+
+        for(int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            int rowMin = i;
+            char c = a.charAt(i - 1);
+            for(int j = 1; j <= b.length(); j++) {
+                int cost = c == b.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+                rowMin = Math.min(rowMin, current[j]);
+            }
+            if(rowMin > max) {
+                return max + 1;
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+
+        return Math.min(previous[b.length()], max + 1);
+    }
+
+    /**
+     * Reads persisted memory.
+     */
+    private void read() {
+        String[][] read;
+        String[][] readRows;
+
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+            if(buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                return;
+            }
+
+            // Entries (every one takes at least three lengths)
+            read = new String[SnapshotCache.readLength(buffer, 12)][];
+            for(int i = 0; i < read.length; i++) {
+                read[i] = new String[] {SnapshotCache.readString(buffer), SnapshotCache.readString(buffer), SnapshotCache.readString(buffer)};
+            }
+            // Rows (file, name and entry)
+            readRows = new String[SnapshotCache.readLength(buffer, 12)][];
+            for(int i = 0; i < readRows.length; i++) {
+                String file = SnapshotCache.readString(buffer);
+                String name = SnapshotCache.readString(buffer);
+                String[] entry = read[buffer.getInt()];
+                readRows[i] = new String[] {entry[0], entry[1], entry[2], file, name};
+            }
+        } catch(NoSuchFileException nsfe) {
+            // Memory was not saved yet
+            return;
+        } catch(IOException | RuntimeException e) {
+            // Broken memory is dropped
+            e.printStackTrace();
+            return;
+        }
+
+        for(String[] row : readRows) {
+            add(row[0], row[1], row[2], row[3], row[4]);
+        }
+        changed = false;
+    }
+
+    /**
+     * Saves memory (if it was changed).
+     */
+    private void write() {
+        if(!changed) {
+            return;
+        }
+
+        if(removed > 0) {
+            compact();
+        }
+        Path temp = null;
+        try {
+            Files.createDirectories(file.getParent());
+            temp = Files.createTempFile(file.getParent(), "memory", ".tmp");
+            try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(sources.size());
+                for(int i = 0; i < sources.size(); i++) {
+                    SnapshotCache.writeString(out, sources.get(i));
+                    SnapshotCache.writeString(out, texts.get(i));
+                    SnapshotCache.writeString(out, locales.get(i));
+                }
+                int count = 0;
+                for(Map<String, Integer> names : rows.values()) {
+                    count += names.size();
+                }
+                out.writeInt(count);
+                for(Map.Entry<String, Map<String, Integer>> names : rows.entrySet()) {
+                    for(Map.Entry<String, Integer> row : names.getValue().entrySet()) {
+                        SnapshotCache.writeString(out, names.getKey());
+                        SnapshotCache.writeString(out, row.getKey());
+                        out.writeInt(row.getValue());
+                    }
+                }
+            }
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch(AtomicMoveNotSupportedException amnse) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            changed = false;
+        } catch(IOException ioe) {
+            ioe.printStackTrace();
+            try {
+                if(temp != null) {
+                    Files.deleteIfExists(temp);
+                }
+            } catch(IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
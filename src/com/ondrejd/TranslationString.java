@@ -6,75 +6,191 @@
 
 package com.ondrejd;
 
-import javafx.beans.property.SimpleBooleanProperty;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 import javafx.beans.property.SimpleStringProperty;
+import javafx.beans.property.StringProperty;
 
+/**
+ * Single translation string (row of data table).
+ *
+ * Values are kept in plain fields to keep rows small (there may be hundreds
+ * of thousands of them). Property of text is created only when the table
+ * asks for it, file names are shared between rows and flags are packed
+ * into a single byte.
+ *
+ * Text of string with inline markup (e.g. <code>&lt;b&gt;</code> or
+ * <code>&lt;xliff:g&gt;</code>) is its inner XML, so the markup is kept
+ * when the string is saved.
+ */
 public class TranslationString {
-    private final SimpleStringProperty name;
-    private final SimpleStringProperty text;
-    private final SimpleStringProperty file;
-    private final SimpleBooleanProperty translatable;
+    private static final byte TRANSLATABLE = 1;
+    private static final byte MODIFIED = 2;
+    private static final byte CONFLICT = 4;
+    private static final byte MARKUP = 8;
+    private static final ConcurrentHashMap<String, String> fileNames = new ConcurrentHashMap<>();
+
+    private String name;
+    private String text;
+    private String file;
+    private StringProperty textProperty;
+    private byte flags;
 
     /**
      * Constructor
      * @param name
      * @param text
      * @param file
-     * @param translatable 
+     * @param translatable
      */
     public TranslationString(String name, String text, String file, Boolean translatable) {
-        this.name = new SimpleStringProperty(name);
-        this.text = new SimpleStringProperty(text);
-        this.file = new SimpleStringProperty(file);
-        this.translatable = new SimpleBooleanProperty(translatable);
+        this.name = name;
+        this.text = text;
+        this.file = internFile(file);
+        this.flags = translatable ? TRANSLATABLE : 0;
+    }
+
+    /**
+     * @param file
+     * @return Shared instance of file name.
+     */
+    private static String internFile(String file) {
+        if(file == null) {
+            return null;
+        }
+
+        String shared = fileNames.putIfAbsent(file, file);
+        return shared == null ? file : shared;
     }
 
     /**
      * @return Boolean
      */
     public Boolean isTranslatable() {
-        return translatable.get();
+        return (flags & TRANSLATABLE) != 0;
+    }
+
+    /**
+     * @param translatable
+     */
+    public void setTranslatable(Boolean translatable) {
+        if(translatable) {
+            flags |= TRANSLATABLE;
+        } else {
+            flags &= ~TRANSLATABLE;
+        }
     }
 
     /**
      * @return String
      */
     public String getName() {
-        return name.get();
+        return name;
     }
 
     /**
      * @param name
      */
     public void setName(String name) {
-        this.name.set(name);
+        this.name = name;
     }
 
     /**
      * @return String
      */
     public String getText() {
-        return text.get();
+        return textProperty == null ? text : textProperty.get();
     }
 
     /**
      * @param text
      */
     public void setText(String text) {
-        this.text.set(text);
+        if(!Objects.equals(getText(), text)) {
+            flags |= MODIFIED;
+        }
+        this.text = text;
+        if(textProperty != null) {
+            textProperty.set(text);
+        }
+    }
+
+    /**
+     * @return Property of text (created on first use).
+     */
+    public StringProperty textProperty() {
+        if(textProperty == null) {
+            textProperty = new SimpleStringProperty(this, "text", text);
+        }
+
+        return textProperty;
+    }
+
+    /**
+     * @return Returns TRUE if text was changed since the row was loaded or saved.
+     */
+    public Boolean isModified() {
+        return (flags & MODIFIED) != 0;
+    }
+
+    /**
+     * @param modified
+     */
+    public void setModified(Boolean modified) {
+        if(modified) {
+            flags |= MODIFIED;
+        } else {
+            flags &= ~MODIFIED;
+        }
+    }
+
+    /**
+     * @return Returns TRUE if row was changed on disk while it had unsaved changes.
+     */
+    public Boolean isConflict() {
+        return (flags & CONFLICT) != 0;
+    }
+
+    /**
+     * @param conflict
+     */
+    public void setConflict(Boolean conflict) {
+        if(conflict) {
+            flags |= CONFLICT;
+        } else {
+            flags &= ~CONFLICT;
+        }
+    }
+
+    /**
+     * @return Returns TRUE if text is inner XML of string (it has inline markup).
+     */
+    public Boolean isMarkup() {
+        return (flags & MARKUP) != 0;
+    }
+
+    /**
+     * @param markup
+     */
+    public void setMarkup(Boolean markup) {
+        if(markup) {
+            flags |= MARKUP;
+        } else {
+            flags &= ~MARKUP;
+        }
     }
 
     /**
      * @return String
      */
     public String getFile() {
-        return file.get();
+        return file;
     }
 
     /**
      * @param file
      */
     public void setFile(String file) {
-        this.file.set(file);
+        this.file = internFile(file);
     }
 }
@@ -0,0 +1,430 @@
+/**
+ * @author Ondřej Doněk <ondrejd@gmail.com>
+ * @link https://github.com/ondrejd/webtools-trans-helper for the canonical source repository
+ * @license https://www.gnu.org/licenses/gpl-3.0.en.html GNU General Public License 3.0
+ */
+
+package com.ondrejd;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+import javafx.application.Platform;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+
+/**
+ * Checks translations which would break the Android application - format
+ * specifiers (<code>%1$s</code>, <code>%d</code>), inline tags and
+ * <code>\n</code> escapes have to be the same as in the source string,
+ * apostrophes have to be escaped and escape sequences have to be valid.
+ *
+ * All rows are checked once after loading in parallel (the checks are pure
+ * functions of source text and translation), afterwards only edited rows
+ * (and translations of edited source strings) are checked again. Results
+ * are accessed only on JavaFX thread.
+ */
+public class TranslationValidator {
+    private static final String CONVERSIONS = "bBhHsScCdoxXeEfgGaAtT";
+    private static final String ESCAPES = "nt'\"\\@?u";
+
+    private final LocaleAlignment alignment;
+    private final Map<TranslationString, String> problems = new IdentityHashMap<>();
+    // Rows checked one by one while the full check was running
+    private final Set<TranslationString> checked = Collections.newSetFromMap(new IdentityHashMap<>());
+    private boolean running = false;
+    private boolean done = false;
+
+    /**
+     * Constructor
+     * @param data Data rows.
+     * @param alignment Alignment of translations with source strings.
+     */
+    public TranslationValidator(ObservableList<TranslationString> data, LocaleAlignment alignment) {
+        this.alignment = alignment;
+        data.addListener((ListChangeListener.Change<? extends TranslationString> c) -> {
+            while(c.next()) {
+                if(c.wasRemoved()) {
+                    c.getRemoved().forEach(problems::remove);
+                }
+                // Rows loaded at start are checked all at once
+                if(c.wasAdded() && done) {
+                    c.getAddedSubList().forEach(this::validate);
+                }
+            }
+        });
+    }
+
+    /**
+     * Checks all rows in background (using all cores).
+     * @param rows
+     * @param onDone Called on JavaFX thread when results are available.
+     */
+    public void validateAll(List<TranslationString> rows, Runnable onDone) {
+        TranslationString[] snapshot = rows.toArray(new TranslationString[rows.size()]);
+        String[] sources = new String[snapshot.length];
+        String[] texts = new String[snapshot.length];
+        for(int i = 0; i < snapshot.length; i++) {
+            sources[i] = alignment.getSourceText(snapshot[i]);
+            texts[i] = snapshot[i].getText();
+        }
+        running = true;
+        checked.clear();
+
+        // Finished even if the check failed so single rows are not tracked forever
+        CompletableFuture.supplyAsync(() -> check(sources, texts)).whenComplete((result, error) -> {
+            if(error != null) {
+                error.printStackTrace();
+            }
+            Platform.runLater(() -> {
+                for(int i = 0; result != null && i < snapshot.length; i++) {
+                    // Rows edited in the meantime already have fresh result
+                    if(!checked.contains(snapshot[i])) {
+                        setProblem(snapshot[i], result[i]);
+                    }
+                }
+                checked.clear();
+                running = false;
+                done = true;
+                onDone.run();
+            });
+        });
+    }
+
+    /**
+     * Checks row after it was edited (translations of source string are
+     * checked too).
+     * @param row
+     */
+    public void validate(TranslationString row) {
+        validateRow(row);
+        alignment.getTranslations(row).forEach(this::validateRow);
+    }
+
+    /**
+     * @param row
+     */
+    private void validateRow(TranslationString row) {
+        setProblem(row, check(alignment.getSourceText(row), row.getText()));
+        if(running) {
+            checked.add(row);
+        }
+    }
+
+    /**
+     * @param row
+     * @param problem
+     */
+    private void setProblem(TranslationString row, String problem) {
+        if(problem == null) {
+            problems.remove(row);
+        } else {
+            problems.put(row, problem);
+        }
+    }
+
+    /**
+     * @param row
+     * @return Description of problems of row or NULL if row is fine.
+     */
+    public String getProblem(TranslationString row) {
+        return problems.get(row);
+    }
+
+    /**
+     * @return Count of rows with problems.
+     */
+    public int getProblemCount() {
+        return problems.size();
+    }
+
+    /**
+     * Checks translations in parallel.
+     * @param sources Source texts (NULL if there is no source string).
+     * @param texts Translations.
+     * @return Problems of translations (NULL if translation is fine).
+     */
+    static String[] check(String[] sources, String[] texts) {
+        String[] result = new String[texts.length];
+        IntStream.range(0, texts.length).parallel().forEach(i -> {
+            result[i] = check(sources[i], texts[i]);
+        });
+
+        return result;
+    }
+
+    /**
+     * Checks single translation.
+     * @param source Source text (NULL if there is no source string).
+     * @param text Translation.
+     * @return Description of problems or NULL if translation is fine.
+     */
+    static String check(String source, String text) {
+        if(text == null || text.isEmpty()) {
+            return null;
+        }
+
+        StringBuilder problems = new StringBuilder();
+        checkEscapes(text, problems);
+        if(source != null && !source.isEmpty() && !source.equals(text)) {
+            compare(getSpecifiers(source), getSpecifiers(text), problems);
+            compare(getTags(source), getTags(text), problems);
+            int expected = countNewLines(source);
+            int actual = countNewLines(text);
+            if(expected != actual) {
+                append(problems, "Počet \\n: " + actual + " místo " + expected);
+            }
+        }
+
+        return problems.length() == 0 ? null : problems.toString();
+    }
+
+    /**
+     * Checks that apostrophes are escaped (or quoted) and escape sequences
+     * are valid. Inline tags are skipped (quotes of their attributes are
+     * not part of the text).
+     * @param text
+     * @param problems
+     */
+    private static void checkEscapes(String text, StringBuilder problems) {
+        boolean quoted = false;
+        boolean apostrophe = false;
+        String invalid = null;
+
+        for(int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            int close = c == '<' ? getTagEnd(text, i) : -1;
+            if(close > 0) {
+                i = close;
+            } else if(c == '\\') {
+                char next = i + 1 < text.length() ? text.charAt(i + 1) : 0;
+                if(ESCAPES.indexOf(next) < 0 || next == 0 || (next == 'u' && !isHex(text, i + 2, 4))) {
+                    invalid = invalid == null ? "\\" + (next == 0 ? "" : String.valueOf(next)) : invalid;
+                }
+                i++;
+            } else if(c == '"') {
+                quoted = !quoted;
+            } else if(c == '\'' && !quoted) {
+                apostrophe = true;
+            }
+        }
+
+        if(apostrophe) {
+            append(problems, "Neescapovaný apostrof");
+        }
+        if(invalid != null) {
+            append(problems, "Neplatná escape sekvence " + invalid);
+        }
+    }
+
+    /**
+     * @param s
+     * @param start Position of <code>&lt;</code>.
+     * @return Position of <code>&gt;</code> ending tag starting at given
+     *         position or -1 if there is no tag.
+     */
+    private static int getTagEnd(String s, int start) {
+        int name = start + 1 < s.length() && s.charAt(start + 1) == '/' ? start + 2 : start + 1;
+        if(name >= s.length() || !Character.isLetter(s.charAt(name))) {
+            return -1;
+        }
+
+        // Quoted attribute values may contain '>'
+        char quote = 0;
+        for(int i = name; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if(quote != 0) {
+                quote = c == quote ? 0 : quote;
+            } else if(c == '"' || c == '\'') {
+                quote = c;
+            } else if(c == '>') {
+                return i;
+            } else if(c == '<') {
+                return -1;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * @param s
+     * @param from
+     * @param count
+     * @return Returns TRUE if there are count hexadecimal digits from position.
+     */
+    private static boolean isHex(String s, int from, int count) {
+        if(from + count > s.length()) {
+            return false;
+        }
+
+        for(int i = from; i < from + count; i++) {
+            if(Character.digit(s.charAt(i), 16) < 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @param s
+     * @return Count of <code>\n</code> escapes.
+     */
+    private static int countNewLines(String s) {
+        int count = 0;
+        for(int i = s.indexOf('\\'); i >= 0 && i + 1 < s.length(); i = s.indexOf('\\', i + 2)) {
+            if(s.charAt(i + 1) == 'n') {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Finds format specifiers. Specifiers without explicit position get it
+     * by their order, so <code>%s</code> and <code>%1$s</code> are the same.
+     * @param s
+     * @return Sorted specifiers (e.g. <code>%1$s</code>).
+     */
+    private static List<String> getSpecifiers(String s) {
+        int i = s.indexOf('%');
+        if(i < 0) {
+            return Collections.emptyList();
+        }
+
+        List<String> specifiers = new ArrayList<>();
+        int ordinal = 0;
+        for(; i >= 0 && i + 1 < s.length(); i = s.indexOf('%', i + 1)) {
+            int j = i + 1;
+            char c = s.charAt(j);
+            if(c == '%' || c == 'n') {
+                i = j;
+                continue;
+            }
+
+            // Position
+            int position = 0;
+            int digits = j;
+            while(j < s.length() && Character.isDigit(s.charAt(j))) {
+                j++;
+            }
+            if(j > digits && j < s.length() && s.charAt(j) == '$') {
+                position = Integer.parseInt(s.substring(digits, j));
+                j++;
+            } else {
+                j = digits;
+            }
+            // Flags, width and precision
+            int body = j;
+            while(j < s.length() && "-#+0,(<".indexOf(s.charAt(j)) >= 0) {
+                j++;
+            }
+            while(j < s.length() && (Character.isDigit(s.charAt(j)) || s.charAt(j) == '.')) {
+                j++;
+            }
+            // Conversion (date conversions have two letters)
+            if(j >= s.length() || CONVERSIONS.indexOf(s.charAt(j)) < 0) {
+                // Not a specifier (e.g. "100 %")
+                continue;
+            }
+            if((s.charAt(j) == 't' || s.charAt(j) == 'T') && j + 1 < s.length()) {
+                j++;
+            }
+
+            position = position == 0 ? ++ordinal : position;
+            specifiers.add("%" + position + "$" + s.substring(body, j + 1));
+            i = j;
+        }
+        Collections.sort(specifiers);
+
+        return specifiers;
+    }
+
+    /**
+     * Finds inline tags (e.g. <code>&lt;b&gt;</code>).
+     * @param s
+     * @return Sorted tags without attributes.
+     */
+    private static List<String> getTags(String s) {
+        int i = s.indexOf('<');
+        if(i < 0) {
+            return Collections.emptyList();
+        }
+
+        List<String> tags = new ArrayList<>();
+        for(; i >= 0; i = s.indexOf('<', i + 1)) {
+            int j = i + 1;
+            boolean end = j < s.length() && s.charAt(j) == '/';
+            int name = end ? j + 1 : j;
+            j = name;
+            while(j < s.length() && (Character.isLetterOrDigit(s.charAt(j)) || s.charAt(j) == ':')) {
+                j++;
+            }
+            int close = s.indexOf('>', j);
+            if(j == name || !Character.isLetter(s.charAt(name)) || close < 0) {
+                continue;
+            }
+
+            boolean empty = s.charAt(close - 1) == '/';
+            tags.add("<" + (end ? "/" : "") + s.substring(name, j).toLowerCase() + (empty ? "/" : "") + ">");
+            i = close;
+        }
+        Collections.sort(tags);
+
+        return tags;
+    }
+
+    /**
+     * Reports items of source which are missing in translation and items of
+     * translation which are not in source.
+     * @param expected Sorted items of source.
+     * @param actual Sorted items of translation.
+     * @param problems
+     */
+    private static void compare(List<String> expected, List<String> actual, StringBuilder problems) {
+        if(expected.equals(actual)) {
+            return;
+        }
+
+        List<String> missing = new ArrayList<>();
+        List<String> extra = new ArrayList<>();
+        int i = 0;
+        int j = 0;
+        while(i < expected.size() || j < actual.size()) {
+            int cmp = i >= expected.size() ? 1 : j >= actual.size() ? -1 : expected.get(i).compareTo(actual.get(j));
+            if(cmp < 0) {
+                missing.add(expected.get(i++));
+            } else if(cmp > 0) {
+                extra.add(actual.get(j++));
+            } else {
+                i++;
+                j++;
+            }
+        }
+
+        if(!missing.isEmpty()) {
+            append(problems, "Chybí " + String.join(" ", missing));
+        }
+        if(!extra.isEmpty()) {
+            append(problems, "Navíc " + String.join(" ", extra));
+        }
+    }
+
+    /**
+     * @param problems
+     * @param problem
+     */
+    private static void append(StringBuilder problems, String problem) {
+        if(problems.length() > 0) {
+            problems.append("; ");
+        }
+        problems.append(problem);
+    }
+}
@@ -0,0 +1,87 @@
+/**
+ * @author Ondřej Doněk <ondrejd@gmail.com>
+ * @link https://github.com/ondrejd/webtools-trans-helper for the canonical source repository
+ * @license https://www.gnu.org/licenses/gpl-3.0.en.html GNU General Public License 3.0
+ */
+
+package com.ondrejd;
+
+/**
+ * Map of trigrams to posting lists (open addressing, no boxing of keys).
+ */
+class TrigramMap {
+    private long[] keys = new long[1024];
+    private IntList[] lists = new IntList[1024];
+    private int size = 0;
+
+    /**
+     * @param s
+     * @param i
+     * @return Trigram starting at given position packed to long.
+     */
+    static long trigram(String s, int i) {
+        return ((long) s.charAt(i) << 32) | ((long) s.charAt(i + 1) << 16) | s.charAt(i + 2);
+    }
+
+    /**
+     * @param key
+     * @return Posting list or NULL.
+     */
+    IntList get(long key) {
+        int mask = keys.length - 1;
+        for(int i = slot(key, mask); lists[i] != null; i = (i + 1) & mask) {
+            if(keys[i] == key) {
+                return lists[i];
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @param key
+     * @return Posting list (created if needed).
+     */
+    IntList getOrCreate(long key) {
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+        for(; lists[i] != null; i = (i + 1) & mask) {
+            if(keys[i] == key) {
+                return lists[i];
+            }
+        }
+
+        IntList list = new IntList();
+        keys[i] = key;
+        lists[i] = list;
+        if(++size * 2 > keys.length) {
+            grow();
+        }
+
+        return list;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        IntList[] oldLists = lists;
+        keys = new long[oldKeys.length * 2];
+        lists = new IntList[oldLists.length * 2];
+        int mask = keys.length - 1;
+        for(int j = 0; j < oldKeys.length; j++) {
+            if(oldLists[j] == null) {
+                continue;
+            }
+            int i = slot(oldKeys[j], mask);
+            while(lists[i] != null) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = oldKeys[j];
+            lists[i] = oldLists[j];
+        }
+    }
+
+    private static int slot(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+}
@@ -31,6 +31,14 @@ public class WebtoolsTransHelper extends Application {
     
     @Override
     public void start(Stage stage) throws Exception {
+        // Workspace directory (--workspace=DIR is remembered for next runs)
+        Preferences pref = Preferences.userRoot().node(NODE_NAME);
+        String workspace = getParameters().getNamed().get("workspace");
+        if(workspace != null) {
+            XmlDataSource.saveWorkspace(workspace);
+        }
+        XmlDataSource.useSavedWorkspace();
+
         FXMLLoader loader = new FXMLLoader();
         Parent root = loader.load(getClass().getResource("FXMLDocument.fxml").openStream());
         Scene scene = new Scene(root);
@@ -41,7 +49,6 @@ public class WebtoolsTransHelper extends Application {
         // Set title
         stage.setTitle("WebTools Translation Helper");
         // Pull the saved preferences and set the stage size and start location
-        Preferences pref = Preferences.userRoot().node(NODE_NAME);
         double x = pref.getDouble(WINDOW_POSITION_X, DEFAULT_X);
         double y = pref.getDouble(WINDOW_POSITION_Y, DEFAULT_Y);
         double width = pref.getDouble(WINDOW_WIDTH, DEFAULT_WIDTH);
@@ -74,6 +81,11 @@ public class WebtoolsTransHelper extends Application {
      * @param args the command line arguments
      */
     public static void main(String[] args) {
+        // Commands are run without starting JavaFX
+        if(args.length > 0 && CommandLine.isCommand(args[0])) {
+            System.exit(CommandLine.run(args));
+        }
+
         launch(args);
     }
 }
@@ -0,0 +1,114 @@
+/**
+ * @author Ondřej Doněk <ondrejd@gmail.com>
+ * @link https://github.com/ondrejd/webtools-trans-helper for the canonical source repository
+ * @license https://www.gnu.org/licenses/gpl-3.0.en.html GNU General Public License 3.0
+ */
+
+package com.ondrejd;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.regex.Pattern;
+
+/**
+ * Finds string resources (<code>strings.xml</code> files, typically in
+ * Android <code>values-*</code> directories) in workspace directory.
+ *
+ * Directory tree is walked in parallel on fork/join pool - every directory
+ * is listed by its own task. Build outputs, VCS and hidden directories are
+ * skipped. Found files are sorted so the result does not depend on timing.
+ */
+public class WorkspaceScanner {
+    private static final String FILE_NAME = "strings.xml";
+    private static final Set<String> SKIPPED_DIRS = new HashSet<>(Arrays.asList(
+            "build", "bin", "out", "node_modules", "intermediates", "generated"));
+    // Language with optional region (e.g. "cs", "pt-rBR") or BCP 47 tag (e.g. "b+sr+Latn")
+    private static final Pattern LOCALE_QUALIFIER = Pattern.compile(
+            "[a-z]{2}(-r([A-Z]{2}|[0-9]{3}))?|b\\+[a-z]{2,3}(\\+[A-Za-z0-9]{2,8})*");
+
+    /**
+     * @param root Workspace directory.
+     * @return Sorted paths of found resource files.
+     */
+    public static List<Path> scan(Path root) {
+        List<Path> files = ForkJoinPool.commonPool().invoke(new ScanTask(root.toAbsolutePath()));
+        Collections.sort(files);
+        return files;
+    }
+
+    /**
+     * @param file Resource file.
+     * @return Locale of resource file, see {@link #getLocale(String)}.
+     */
+    public static String getLocale(Path file) {
+        return getLocale(file.getParent().getFileName().toString());
+    }
+
+    /**
+     * Only directories qualified by language and region are taken as
+     * locales - <code>values-night</code>, <code>values-v21</code> or
+     * <code>values-cs-land</code> are not.
+     * @param dir Name of resource directory.
+     * @return Locale of directory (e.g. "cs" for values-cs), empty for
+     *         default values or NULL if directory is not values of a locale.
+     */
+    public static String getLocale(String dir) {
+        if(dir.equals("values")) {
+            return "";
+        } else if(dir.startsWith("values-")) {
+            String qualifier = dir.substring("values-".length());
+            return LOCALE_QUALIFIER.matcher(qualifier).matches() ? qualifier : null;
+        }
+
+        return null;
+    }
+
+    /**
+     * Lists single directory and forks tasks for its subdirectories.
+     */
+    private static class ScanTask extends RecursiveTask<List<Path>> {
+        private static final long serialVersionUID = 1L;
+        private final transient Path dir;
+
+        ScanTask(Path dir) {
+            this.dir = dir;
+        }
+
+        @Override
+        protected List<Path> compute() {
+            List<Path> files = new ArrayList<>();
+            List<ScanTask> tasks = new ArrayList<>();
+
+            try(DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+                for(Path entry : entries) {
+                    String name = entry.getFileName().toString();
+                    if(Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+                        if(!name.startsWith(".") && !SKIPPED_DIRS.contains(name)) {
+                            ScanTask task = new ScanTask(entry);
+                            task.fork();
+                            tasks.add(task);
+                        }
+                    } else if(name.equals(FILE_NAME)) {
+                        files.add(entry);
+                    }
+                }
+            } catch(IOException ioe) {
+                // Unreadable directory is skipped
+            }
+
+            tasks.forEach(n -> files.addAll(n.join()));
+            return files;
+        }
+    }
+}
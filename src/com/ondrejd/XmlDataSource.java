@@ -6,160 +6,921 @@
 
 package com.ondrejd;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.prefs.Preferences;
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
-import javafx.collections.transformation.FilteredList;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
-import org.w3c.dom.Attr;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
 
 public class XmlDataSource {
+    private static final String XLIFF_NAMESPACE = "urn:oasis:names:tc:xliff:document:1.2";
     private static final ObservableList<TranslationString> data = FXCollections.<TranslationString>observableArrayList();
-    private static final ObservableList<String> xmlFiles = FXCollections.<String>observableArrayList(
-            "/home/ondrejd/Workspace/StringsAll/Ethwork/strings.xml",
-            "/home/ondrejd/Workspace/StringsAll/Intrace/strings.xml",
-            "/home/ondrejd/Workspace/StringsAll/Qute/strings.xml",
-            "/home/ondrejd/Workspace/StringsAll/WebTools/strings.xml"
-    );
+    private static final String PREFERENCES_NODE = "CostsFX";
+    private static final String WORKSPACE = "Workspace";
+    private static final ObservableList<String> xmlFiles = FXCollections.<String>observableArrayList();
+    private static Path workspace = null;
+    private static final XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+    private static final XMLOutputFactory outputFactory = XMLOutputFactory.newInstance();
+
+    static {
+        inputFactory.setProperty(XMLInputFactory.IS_COALESCING, true);
+    }
+
+    private static final ObservableList<String> loadingFiles = FXCollections.<String>observableArrayList();
+    private static final Set<String> loadedFiles = new HashSet<>();
+    // Hashes of file contents as they were last loaded or saved
+    private static final Map<String, byte[]> fileHashes = new ConcurrentHashMap<>();
+    // Hashes of files which are being saved (written but not moved in place yet)
+    private static final Map<String, byte[]> savingHashes = new ConcurrentHashMap<>();
+    // Byte ranges of strings in files (by absolute path), see XmlSplicer
+    private static final Map<String, XmlSplicer.Ranges> elementRanges = new ConcurrentHashMap<>();
+    private static final ExecutorService loadExecutor = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(),
+            r -> {
+                Thread t = new Thread(r, "xml-loader");
+                t.setDaemon(true);
+                return t;
+            });
 
     public static void appendData(ObservableList<TranslationString> d) {
         data.addAll(d);
     }
-    
+
     /**
-     * Load data from XML file.
-     * @return List of data rows.
+     * Uses XML files found in workspace directory. Must be called before
+     * data are loaded.
+     * @param root Workspace directory.
      */
-    public static ObservableList<TranslationString> load() {
+    public static void setWorkspace(File root) {
+        workspace = root.toPath().toAbsolutePath().normalize();
+        List<String> files = new ArrayList<>();
+        WorkspaceScanner.scan(workspace).forEach(n -> files.add(n.toString()));
+        xmlFiles.setAll(files);
+    }
+
+    /**
+     * @return Workspace directory or NULL if none is set.
+     */
+    public static Path getWorkspace() {
+        return workspace;
+    }
+
+    /**
+     * Uses workspace remembered in user preferences (see {@link #saveWorkspace}).
+     * @return Returns TRUE if workspace is configured and it exists.
+     */
+    public static boolean useSavedWorkspace() {
+        String dir = Preferences.userRoot().node(PREFERENCES_NODE).get(WORKSPACE, null);
+        if(dir == null || !new File(dir).isDirectory()) {
+            return false;
+        }
+
+        setWorkspace(new File(dir));
+        return true;
+    }
+
+    /**
+     * Remembers workspace in user preferences for next runs.
+     * @param dir Workspace directory.
+     */
+    public static void saveWorkspace(String dir) {
+        Preferences.userRoot().node(PREFERENCES_NODE).put(WORKSPACE, dir);
+    }
+
+    /**
+     * @return Names of XML files (as used in data rows).
+     */
+    public static List<String> getFileNames() {
+        List<String> names = new ArrayList<>(xmlFiles.size());
+        xmlFiles.forEach(n -> names.add(getFileName(new File(n))));
+        return names;
+    }
+
+    /**
+     * @return Sorted locales of XML files (empty string is default locale).
+     */
+    public static List<String> getLocales() {
+        Set<String> locales = new TreeSet<>();
         xmlFiles.forEach(n -> {
-            ObservableList<TranslationString> d = FXCollections.<TranslationString>observableArrayList();
-            File file = new File(n);
-    
-            try {
-                if(file.exists()) {
-                    d = loadXmlFile(file);
+            String locale = WorkspaceScanner.getLocale(Paths.get(n));
+            if(locale != null) {
+                locales.add(locale);
+            }
+        });
+        return new ArrayList<>(locales);
+    }
+
+    /**
+     * @return Paths of XML files.
+     */
+    public static List<String> getXmlFiles() {
+        return xmlFiles;
+    }
+
+    /**
+     * @return Names of files (as used in data rows) which are still loading.
+     */
+    public static ObservableList<String> getLoadingFiles() {
+        return loadingFiles;
+    }
+
+    /**
+     * Load data from XML files.
+     *
+     * Files are parsed in parallel in background and the returned list is
+     * filled progressively on JavaFX thread. Rows are always appended in
+     * order of {@link #xmlFiles} no matter which file is parsed first.
+     * @return List of data rows (empty until the first file is loaded).
+     */
+    public static ObservableList<TranslationString> load() {
+        int count = xmlFiles.size();
+        List<List<TranslationString>> parsed = new ArrayList<>(Collections.nCopies(count, null));
+        int[] next = {0};
+
+        for(int i = 0; i < count; i++) {
+            final int index = i;
+            File file = new File(xmlFiles.get(i));
+            loadingFiles.add(getFileName(file));
+
+            loadExecutor.execute(() -> {
+                List<TranslationString> d = loadFile(file);
+
+                Platform.runLater(() -> {
+                    parsed.set(index, d);
+                    // Append all files that are ready and in order
+                    while(next[0] < count && parsed.get(next[0]) != null) {
+                        data.addAll(parsed.get(next[0]));
+                        loadedFiles.add(xmlFiles.get(next[0]));
+                        loadingFiles.remove(getFileName(new File(xmlFiles.get(next[0]))));
+                        parsed.set(next[0], null);
+                        next[0]++;
+                    }
+                });
+            });
+        }
+
+        return data;
+    }
+
+    /**
+     * Loads single file - errors are reported and result in no rows.
+     * @param file
+     * @return List of data rows.
+     */
+    static List<TranslationString> loadFile(File file) {
+        try {
+            if(file.exists()) {
+                // Parse only files which changed since they were cached
+                long start = Metrics.start();
+                SnapshotCache.Entry cached = SnapshotCache.read(file, getFileName(file));
+                if(cached != null) {
+                    fileHashes.put(file.getAbsolutePath(), cached.getHash());
+                    Metrics.record(Metrics.Kind.CACHE, start, file.length(), cached.getRows().size(), getFileName(file));
+                    return cached.getRows();
                 }
-            } catch(Exception e) {
-                e.printStackTrace();
-                d.clear();
+
+                BasicFileAttributes attrs = SnapshotCache.readAttributes(file);
+                MessageDigest digest = SnapshotCache.newDigest();
+                List<TranslationString> rows = loadXmlFile(file, digest);
+                byte[] hash = digest.digest();
+                fileHashes.put(file.getAbsolutePath(), hash);
+                SnapshotCache.write(file, attrs, hash, rows);
+                return rows;
             }
+        } catch(Exception e) {
+            e.printStackTrace();
+        }
+
+        return new ArrayList<>();
+    }
 
-            data.addAll(d);
+    /**
+     * Reloads file which was changed on disk (by someone else).
+     *
+     * File is parsed on the calling (background) thread. Changes are then
+     * merged into data on JavaFX thread - only added, removed and changed
+     * strings are touched. Rows with unsaved changes are kept as they are
+     * and marked as conflicts.
+     * @param file
+     * @param onMerged Called (on JavaFX thread) with count of conflicts after changes were merged.
+     */
+    public static void reload(File file, Consumer<Integer> onMerged) {
+        String path = file.getAbsolutePath();
+        String xmlFile = xmlFiles.stream().filter(n -> new File(n).getAbsolutePath().equals(path)).findFirst().orElse(null);
+        if(xmlFile == null) {
+            return;
+        }
+
+        List<TranslationString> rows = reloadFile(file);
+        if(rows == null) {
+            return;
+        }
+
+        Platform.runLater(() -> {
+            // Files which are still loading are not merged
+            if(!loadedFiles.contains(xmlFile)) {
+                return;
+            }
+            onMerged.accept(merge(data, getFileName(file), rows));
         });
-        
-        return data;
+    }
+
+    /**
+     * Parses file changed on disk and remembers its new hash.
+     * @param file
+     * @return Rows of file or NULL if file can't be read (it may be just
+     *         being written) or its content is already known (e.g. it was
+     *         saved by us).
+     */
+    static List<TranslationString> reloadFile(File file) {
+        String path = file.getAbsolutePath();
+        List<TranslationString> rows;
+        byte[] hash;
+        BasicFileAttributes attrs;
+
+        try {
+            attrs = SnapshotCache.readAttributes(file);
+            MessageDigest digest = SnapshotCache.newDigest();
+            rows = loadXmlFile(file, digest);
+            hash = digest.digest();
+        } catch(Exception e) {
+            // Next change will come
+            return null;
+        }
+
+        // Ignore our own saves and changes which were already merged
+        if(Arrays.equals(hash, fileHashes.get(path)) || Arrays.equals(hash, savingHashes.get(path))) {
+            return null;
+        }
+        fileHashes.put(path, hash);
+        SnapshotCache.write(file, attrs, hash, rows);
+
+        return rows;
+    }
+
+    /**
+     * Merges rows read from disk into data rows. Added strings are placed
+     * after the string which precedes them on disk.
+     * @param target Data rows.
+     * @param fileName Name of file as used in data rows.
+     * @param fresh Rows read from disk.
+     * @return Count of conflicts.
+     */
+    static int merge(List<TranslationString> target, String fileName, List<TranslationString> fresh) {
+        Map<String, TranslationString> freshByName = new HashMap<>();
+        fresh.forEach(n -> freshByName.putIfAbsent(n.getName(), n));
+        Map<String, TranslationString> current = new HashMap<>();
+        Set<TranslationString> removed = new HashSet<>();
+        int conflicts = 0;
+
+        // Changed and removed strings
+        for(TranslationString row : target) {
+            if(!fileName.equals(row.getFile())) {
+                continue;
+            }
+
+            current.putIfAbsent(row.getName(), row);
+            TranslationString disk = freshByName.get(row.getName());
+            if(disk == null) {
+                if(row.isModified()) {
+                    row.setConflict(true);
+                    conflicts++;
+                } else {
+                    removed.add(row);
+                }
+            } else if(!disk.getText().equals(row.getText()) || !disk.isTranslatable().equals(row.isTranslatable())
+                    || !disk.isMarkup().equals(row.isMarkup())) {
+                if(row.isModified()) {
+                    row.setConflict(true);
+                    conflicts++;
+                } else {
+                    row.setText(disk.getText());
+                    row.setTranslatable(disk.isTranslatable());
+                    row.setMarkup(disk.isMarkup());
+                    row.setModified(false);
+                }
+            }
+        }
+
+        // Added strings (runs of them following the same string)
+        List<TranslationString> added = new ArrayList<>();
+        TranslationString previous = null;
+        for(TranslationString n : fresh) {
+            TranslationString row = current.get(n.getName());
+            if(row == null) {
+                current.put(n.getName(), n);
+                added.add(n);
+                continue;
+            }
+            if(!added.isEmpty()) {
+                insert(target, fileName, previous, added);
+                added = new ArrayList<>();
+            }
+            previous = row;
+        }
+        if(!added.isEmpty()) {
+            insert(target, fileName, previous, added);
+        }
+        if(!removed.isEmpty()) {
+            target.removeAll(removed);
+        }
+
+        return conflicts;
+    }
+
+    /**
+     * @param target Data rows.
+     * @param fileName Name of file as used in data rows.
+     * @param previous Row after which rows are inserted (NULL to insert them
+     *                 before the first row of file).
+     * @param rows Inserted rows.
+     */
+    private static void insert(List<TranslationString> target, String fileName, TranslationString previous, List<TranslationString> rows) {
+        int index = -1;
+        for(int i = 0; i < target.size() && index < 0; i++) {
+            TranslationString row = target.get(i);
+            if(previous == null ? fileName.equals(row.getFile()) : row == previous) {
+                index = previous == null ? i : i + 1;
+            }
+        }
+
+        target.addAll(index < 0 ? target.size() : index, rows);
+    }
+
+    /**
+     * @param file
+     * @return Name of the file as used in data rows - path relative to workspace
+     *         (e.g. "app/src/main/res/values-cs/strings.xml") or parent directory
+     *         and file name (e.g. "Qute/strings.xml").
+     */
+    static String getFileName(File file) {
+        Path path = file.toPath().toAbsolutePath().normalize();
+        if(workspace != null && path.startsWith(workspace)) {
+            return workspace.relativize(path).toString().replace(File.separatorChar, '/');
+        }
+
+        return file.getAbsoluteFile().getParentFile().getName() + "/" + file.getName();
     }
 
     /**
      * Loads XML file.
+     *
+     * Uses streaming (StAX) parser so no DOM tree is built - rows are
+     * created directly while reading the file. Text of string element with
+     * nested elements (inline markup) is its inner XML.
      * @param file
+     * @param digest Digest updated with the whole content of file (may be NULL).
      */
-    private static ObservableList<TranslationString> loadXmlFile(File file) throws Exception {
+    static ObservableList<TranslationString> loadXmlFile(File file, MessageDigest digest) throws Exception {
+        long start = Metrics.start();
         // Prepare data
         ObservableList<TranslationString> fileData = FXCollections.<TranslationString>observableArrayList();
         // Set filename
-        String fileName = file.getParentFile().getName() + "/" + file.getName();
-        // Load document
-        DocumentBuilderFactory docFactory = DocumentBuilderFactory.newInstance();
-        DocumentBuilder docBuilder = docFactory.newDocumentBuilder();
-        Document doc = docBuilder.parse(file);
-        // Optional, but recommended, read link below
-        // http://stackoverflow.com/questions/13786607/normalization-in-dom-parsing-with-java-how-does-it-work
-        doc.getDocumentElement().normalize();
-        // Get all strings
-        NodeList stringsNodes = doc.getElementsByTagName("string");
-        // Go ghrough all strings
-        for(int i = 0; i < stringsNodes.getLength(); i++) {
-            // Get element
-            Element stringElm = (Element) stringsNodes.item(i);
-            // Get data:
-            // name
-            String name = stringElm.getAttribute("name");
-            // text
-            String text = stringElm.getTextContent();
-            // editable
-            Boolean translatable = true;
-            if(stringElm.hasAttribute("translatable")) {
-                if(stringElm.getAttribute("translatable").equals("false")) {
-                    translatable = false;
+        String fileName = getFileName(file);
+        // Open document
+        InputStream in = new FileInputStream(file);
+        if(digest != null) {
+            in = new DigestInputStream(in, digest);
+        }
+        in = new BufferedInputStream(in);
+        XMLStreamReader reader = null;
+
+        try {
+            // Parser may close stream at the end of document, we need it open
+            reader = inputFactory.createXMLStreamReader(new FilterInputStream(in) {
+                @Override
+                public void close() {
+                }
+            });
+            // Go through all strings
+            while(reader.hasNext()) {
+                if(reader.next() != XMLStreamConstants.START_ELEMENT || !isStringElement(reader)) {
+                    continue;
                 }
+                // Get data:
+                // name
+                String name = reader.getAttributeValue(null, "name");
+                if(name == null) {
+                    name = "";
+                }
+                // editable
+                Boolean translatable = !"false".equals(reader.getAttributeValue(null, "translatable"));
+                // text
+                StringBuilder markup = new StringBuilder();
+                String text = readTextContent(reader, markup);
+                // Create data row
+                TranslationString row = new TranslationString(name, text, fileName, translatable);
+                row.setMarkup(markup.length() > 0);
+                fileData.add(row);
+            }
+            // Make sure the whole file went through digest
+            byte[] rest = new byte[8192];
+            while(in.read(rest) >= 0) {
+                // Skip
             }
-            // Create data row
-            fileData.add(new TranslationString(name, text, fileName, translatable));
+        } finally {
+            if(reader != null) {
+                reader.close();
+            }
+            in.close();
         }
 
+        Metrics.record(Metrics.Kind.LOAD, start, file.length(), fileData.size(), fileName);
         return fileData;
     }
 
+    /**
+     * Finds content of file which would be lost if the file was regenerated
+     * from its strings (see {@link #saveXmlFile(File, List)}).
+     * @param file
+     * @return Description of the first such content (e.g. comment or other
+     *         resource than string) or NULL if there is none.
+     * @throws Exception If file can't be parsed.
+     */
+    static String getLostContent(File file) throws Exception {
+        XMLStreamReader reader = null;
+        try(InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            reader = inputFactory.createXMLStreamReader(in);
+            int depth = 0;
+            while(reader.hasNext()) {
+                switch(reader.next()) {
+                    case XMLStreamConstants.COMMENT:
+                        return "comment";
+                    case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                        return "processing instruction <?" + reader.getPITarget() + "?>";
+                    case XMLStreamConstants.DTD:
+                        return "DOCTYPE";
+                    case XMLStreamConstants.START_ELEMENT:
+                        depth++;
+                        if(depth == 1) {
+                            for(int i = 0; i < reader.getNamespaceCount(); i++) {
+                                if(!XLIFF_NAMESPACE.equals(reader.getNamespaceURI(i))) {
+                                    return "namespace " + reader.getNamespaceURI(i);
+                                }
+                            }
+                            if(reader.getAttributeCount() > 0) {
+                                return "attribute " + getQName(reader.getAttributePrefix(0), reader.getAttributeLocalName(0)) + " of root element";
+                            }
+                        } else if(depth == 2) {
+                            if(!isStringElement(reader)) {
+                                return "element <" + getQName(reader.getPrefix(), reader.getLocalName()) + ">";
+                            }
+                            for(int i = 0; i < reader.getAttributeCount(); i++) {
+                                String prefix = reader.getAttributePrefix(i);
+                                String name = reader.getAttributeLocalName(i);
+                                if((prefix != null && !prefix.isEmpty()) || (!name.equals("name") && !name.equals("translatable"))) {
+                                    return "attribute " + getQName(prefix, name) + " of string " + reader.getAttributeValue(null, "name");
+                                }
+                            }
+                            // Content of string is kept (inline markup too)
+                            readTextContent(reader, new StringBuilder());
+                            depth--;
+                        }
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        depth--;
+                        break;
+                    default:
+                        break;
+                }
+            }
+        } finally {
+            if(reader != null) {
+                reader.close();
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @param reader Reader positioned on start element.
+     * @return Returns TRUE if current element is <code>string</code>.
+     */
+    private static boolean isStringElement(XMLStreamReader reader) {
+        String prefix = reader.getPrefix();
+        return "string".equals(reader.getLocalName()) && (prefix == null || prefix.isEmpty());
+    }
+
+    /**
+     * Reads content of the current element and leaves reader positioned on
+     * its end element. Content is kept as text until the first nested
+     * element comes, from then on it is collected as XML.
+     * @param reader Reader positioned on start element.
+     * @param markup Filled with inner XML if element has nested elements.
+     * @return Text content or inner XML.
+     */
+    private static String readTextContent(XMLStreamReader reader, StringBuilder markup) throws XMLStreamException {
+        StringBuilder text = new StringBuilder();
+        int depth = 1;
+
+        while(depth > 0) {
+            switch(reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    if(markup.length() == 0) {
+                        markup.append(XmlSplicer.escape(text.toString()));
+                        text = markup;
+                    }
+                    depth++;
+                    appendStartTag(reader, markup);
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    if(--depth > 0) {
+                        markup.append("</").append(getQName(reader.getPrefix(), reader.getLocalName())).append('>');
+                    }
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                case XMLStreamConstants.ENTITY_REFERENCE:
+                    text.append(text == markup ? XmlSplicer.escape(reader.getText()) : reader.getText());
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        return text.toString();
+    }
+
+    /**
+     * Appends start tag of nested element (with its attributes).
+     * @param reader Reader positioned on start element.
+     * @param markup
+     */
+    private static void appendStartTag(XMLStreamReader reader, StringBuilder markup) {
+        markup.append('<').append(getQName(reader.getPrefix(), reader.getLocalName()));
+        for(int i = 0; i < reader.getNamespaceCount(); i++) {
+            String prefix = reader.getNamespacePrefix(i);
+            markup.append(prefix == null || prefix.isEmpty() ? " xmlns" : " xmlns:" + prefix)
+                    .append("=\"").append(XmlSplicer.escapeAttribute(reader.getNamespaceURI(i))).append('"');
+        }
+        for(int i = 0; i < reader.getAttributeCount(); i++) {
+            markup.append(' ').append(getQName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i)))
+                    .append("=\"").append(XmlSplicer.escapeAttribute(reader.getAttributeValue(i))).append('"');
+        }
+        markup.append('>');
+    }
+
+    /**
+     * @param prefix
+     * @param localName
+     * @return Qualified name.
+     */
+    private static String getQName(String prefix, String localName) {
+        return prefix == null || prefix.isEmpty() ? localName : prefix + ":" + localName;
+    }
+
+    /**
+     * Snapshot of rows of one modified file. Rows are copies so snapshot
+     * can be written from any thread while user continues editing.
+     */
+    public static class FileSnapshot {
+        private final File file;
+        private final List<TranslationString> rows;
+        // Source rows which were modified when snapshot was taken
+        private final List<TranslationString> modified = new ArrayList<>();
+        private volatile boolean conflict = false;
+
+        FileSnapshot(File file, List<TranslationString> source) {
+            this.file = file;
+            this.rows = new ArrayList<>(source.size());
+            source.forEach(n -> {
+                TranslationString copy = new TranslationString(n.getName(), n.getText(), n.getFile(), n.isTranslatable());
+                // Broken markup is saved (and cached) as plain text
+                copy.setMarkup(n.isMarkup() && XmlSplicer.isWellFormed(n.getText()));
+                copy.setModified(n.isModified());
+                rows.add(copy);
+                if(n.isModified()) {
+                    modified.add(n);
+                }
+            });
+        }
+
+        /**
+         * @return File
+         */
+        public File getFile() {
+            return file;
+        }
+
+        /**
+         * @return Returns TRUE if file was not saved because it was changed
+         *         on disk since it was loaded (it has to be reloaded first).
+         */
+        public boolean isConflict() {
+            return conflict;
+        }
+
+        /**
+         * Marks source rows which were modified in snapshot as modified
+         * again (e.g. when save failed).
+         */
+        public void markModified() {
+            modified.forEach(n -> n.setModified(true));
+        }
+    }
+
     /**
      * Save data.
+     *
+     * Rows are grouped by file in a single pass and only files containing
+     * modified rows are backed up and rewritten.
      * @param data 
      */
     public static void save(ObservableList<TranslationString> data) {
+        snapshot(data).forEach(n -> {
+            if(!saveSnapshot(n)) {
+                n.markModified();
+            }
+        });
+    }
+
+    /**
+     * Takes snapshot of all modified files and clears modified flags of
+     * their rows. Must be called on the thread which owns data (JavaFX
+     * thread), snapshots itself can be saved from any thread.
+     * @param data
+     * @return List of snapshots to save.
+     */
+    public static List<FileSnapshot> snapshot(ObservableList<TranslationString> data) {
+        // Group rows by file and find out which files were modified
+        Map<String, List<TranslationString>> rowsByFile = new HashMap<>();
+        Set<String> modifiedFiles = new HashSet<>();
+        data.forEach(n -> {
+            rowsByFile.computeIfAbsent(n.getFile(), k -> new ArrayList<>()).add(n);
+            if(n.isModified()) {
+                modifiedFiles.add(n.getFile());
+            }
+        });
+
+        List<FileSnapshot> snapshots = new ArrayList<>();
         xmlFiles.forEach(fileName -> {
-            saveXmlFile(new File(fileName), new FilteredList<>(data, n -> {
-                return (fileName.contains(n.getFile()));
-            }));
+            File file = new File(fileName);
+            String name = getFileName(file);
+
+            // Never overwrite file which was not loaded (yet) or is unchanged
+            if(!loadedFiles.contains(fileName) || !modifiedFiles.contains(name)) {
+                return;
+            }
+
+            List<TranslationString> rows = rowsByFile.get(name);
+            snapshots.add(new FileSnapshot(file, rows));
+            rows.forEach(n -> n.setModified(false));
         });
+
+        return snapshots;
+    }
+
+    /**
+     * Save snapshot of file. Only modified strings are spliced into the
+     * original file, the rest of file stays byte for byte the same. The file
+     * is never regenerated - if it was changed on disk since it was loaded
+     * nothing is written and snapshot is marked as conflict.
+     * @param snapshot
+     * @return Returns TRUE if file was saved.
+     */
+    public static boolean saveSnapshot(FileSnapshot snapshot) {
+        return saveXmlFile(snapshot.file, snapshot.rows, snapshot);
+    }
+
+    /**
+     * Save XML file (the whole file is regenerated - only strings are kept).
+     * @param File XML file.
+     * @param data Data we want to save.
+     * @return Returns TRUE if file was saved.
+     */
+    static boolean saveXmlFile(File file, List<TranslationString> data) {
+        return saveXmlFile(file, data, null);
     }
     
     /**
      * Save XML file.
+     *
+     * XML is streamed into temporary file in the same directory which is
+     * then atomically moved over the original file - so the original file
+     * is never left truncated. Spliced output differs from the original
+     * only in modified strings, regenerated output is always formatted the
+     * same way (one string per line, attributes in fixed order).
      * @param File XML file.
      * @param data Data we want to save.
+     * @param snapshot Snapshot of data whose modified strings are spliced
+     *                 into the original file or NULL to regenerate the file.
+     * @return Returns TRUE if file was saved.
      */
-    private static void saveXmlFile(File file, FilteredList<TranslationString> data) {
+    private static boolean saveXmlFile(File file, List<TranslationString> data, FileSnapshot snapshot) {
+        Path target = file.toPath().toAbsolutePath();
+        String path = file.getAbsolutePath();
+        Path temp = null;
+        long start = Metrics.start();
+
         try {
             // Create backup
             saveXmlBackup(file);
-            // Create document
-            DocumentBuilderFactory docFactory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder docBuilder = docFactory.newDocumentBuilder();
-            Document doc = docBuilder.newDocument();
-            // Root element
-            Element root = doc.createElement("resources");
-            doc.appendChild(root);
-            // Go through the strings and construct corresponding XML
-            for(int i = 0; i < data.size(); i++) {
-                Element stringElm = doc.createElement("string");
-                TranslationString item = data.get(i);
-
-                if(item.isTranslatable() != true) {
-                    stringElm.setAttribute("translatable", "false");
+            // Write the content into temporary file
+            temp = Files.createTempFile(target.getParent(), file.getName(), ".tmp");
+            MessageDigest digest = SnapshotCache.newDigest();
+            XmlSplicer.Ranges ranges = null;
+            try(FileOutputStream out = new FileOutputStream(temp.toFile())) {
+                OutputStream digestOut = new BufferedOutputStream(new DigestOutputStream(out, digest));
+                if(snapshot != null) {
+                    ranges = spliceXml(file, data, digestOut);
+                    if(ranges == null) {
+                        snapshot.conflict = true;
+                        throw new IOException("Soubor " + getFileName(file) + " byl změněn mimo aplikaci, musí být nejdřív znovu načten");
+                    }
+                } else {
+                    Writer writer = new BufferedWriter(new OutputStreamWriter(digestOut, StandardCharsets.UTF_8));
+                    writeXml(writer, data);
+                    writer.flush();
+                }
+                digestOut.flush();
+                out.getFD().sync();
+            }
+            // Remember what we are writing so the change is not taken for
+            // external one
+            byte[] hash = digest.digest();
+            savingHashes.put(path, hash);
+            // Keep permissions of the original file
+            if(Files.exists(target)) {
+                try {
+                    Files.setPosixFilePermissions(temp, Files.getPosixFilePermissions(target));
+                } catch(UnsupportedOperationException uoe) {
+                    // Not POSIX file system
+                }
+            }
+            // Renaming keeps size and modification time of written file
+            BasicFileAttributes attrs = SnapshotCache.readAttributes(temp.toFile());
+            // Replace original file
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch(AtomicMoveNotSupportedException amnse) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            // File now has the written content
+            fileHashes.put(path, hash);
+            if(ranges != null) {
+                elementRanges.put(path, XmlSplicer.withHash(ranges, hash));
+            } else {
+                elementRanges.remove(path);
+            }
+            savingHashes.remove(path);
+            // Keep cache in sync with saved file
+            SnapshotCache.write(file, attrs, hash, data);
+            Metrics.record(Metrics.Kind.SAVE, start, file.length(), data.size(), getFileName(file));
+            return true;
+        } catch(IOException ioe) {
+            ioe.printStackTrace();
+        } catch(XMLStreamException xse) {
+            xse.printStackTrace();
+        }
+
+        // Clean up after failed write (file keeps its old content)
+        savingHashes.remove(path);
+        if(temp != null) {
+            try {
+                Files.deleteIfExists(temp);
+            } catch(IOException ioe) {
+                ioe.printStackTrace();
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Writes original file with modified strings spliced in.
+     * @param file
+     * @param data
+     * @param out
+     * @return Ranges of written strings or NULL if file changed (or was
+     *         removed) since it was loaded or saved (nothing is written then).
+     * @throws IOException If file can't be spliced (e.g. it is not in UTF-8).
+     */
+    private static XmlSplicer.Ranges spliceXml(File file, List<TranslationString> data, OutputStream out) throws IOException {
+        String path = file.getAbsolutePath();
+        byte[] hash = fileHashes.get(path);
+        if(hash == null || !file.exists()) {
+            return null;
+        }
+
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if(channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Soubor " + getFileName(file) + " je příliš velký");
+            }
+
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            // File may have been changed by someone else and not reloaded yet
+            MessageDigest digest = SnapshotCache.newDigest();
+            digest.update(in.duplicate());
+            if(!Arrays.equals(digest.digest(), hash)) {
+                return null;
+            }
+
+            XmlSplicer.Ranges ranges = elementRanges.get(path);
+            if(ranges == null || !Arrays.equals(ranges.getHash(), hash)) {
+                // Ranges are found at the first save of file so loading
+                // stays as fast as it was
+                ranges = XmlSplicer.scan(in, hash);
+                if(ranges == null) {
+                    throw new IOException("Soubor " + getFileName(file) + " nelze uložit bez ztráty obsahu (není v UTF-8?)");
                 }
+            }
 
-                stringElm.setAttribute("name", item.getName());
-                stringElm.setTextContent(item.getText());
-                root.appendChild(stringElm);
+            XmlSplicer.Ranges written = XmlSplicer.splice(in, ranges, data, out);
+            if(written == null) {
+                throw new IOException("Upravené řetězce nebyly v souboru " + getFileName(file) + " nalezeny");
             }
-            // Write the content into xml file
-            TransformerFactory transformerFactory = TransformerFactory.newInstance();
-            Transformer transformer = transformerFactory.newTransformer();
-            DOMSource source = new DOMSource(doc);
-            StreamResult result = new StreamResult(file);
-            transformer.transform(source, result);
-        } catch (ParserConfigurationException pce) {
-            pce.printStackTrace();
-        } catch (TransformerException tfe) {
-            tfe.printStackTrace();
+            return written;
         }
     }
 
     /**
-     * Creates backup XML file (if needed).
+     * Writes strings as XML.
+     * @param writer
+     * @param data
+     */
+    private static void writeXml(Writer writer, List<TranslationString> data) throws XMLStreamException, IOException {
+        XMLStreamWriter xml = outputFactory.createXMLStreamWriter(writer);
+        xml.writeStartDocument("UTF-8", "1.0");
+        xml.writeCharacters("\n");
+        xml.writeStartElement("resources");
+        // Prefix used by inline markup of Android strings
+        if(data.stream().anyMatch(n -> n.isMarkup() && n.getText().contains("<xliff:"))) {
+            xml.writeNamespace("xliff", XLIFF_NAMESPACE);
+        }
+        // Go through the strings and write corresponding XML
+        for(TranslationString item : data) {
+            xml.writeCharacters("\n    ");
+            xml.writeStartElement("string");
+            xml.writeAttribute("name", item.getName());
+
+            if(item.isTranslatable() != true) {
+                xml.writeAttribute("translatable", "false");
+            }
+
+            if(item.isMarkup() && XmlSplicer.isWellFormed(item.getText())) {
+                // Inline markup is written as it is (empty text closes start tag)
+                xml.writeCharacters("");
+                xml.flush();
+                writer.write(item.getText());
+            } else {
+                xml.writeCharacters(item.getText());
+            }
+            xml.writeEndElement();
+        }
+        xml.writeCharacters("\n");
+        xml.writeEndElement();
+        xml.writeCharacters("\n");
+        xml.writeEndDocument();
+        xml.flush();
+    }
+
+    /**
+     * Stores current content of file as a revision (if needed).
      * @param file
      */
     private static void saveXmlBackup(File file) {
@@ -167,13 +928,10 @@ public class XmlDataSource {
             return;
         }
 
-        String backupFileName = file.getAbsolutePath() + ".bak";
-        File backupFile = new File(backupFileName);
-
-        try {
-            Files.copy(file.toPath(), backupFile.toPath(), java.nio.file.StandardCopyOption.REPLACE_EXISTING);
-        } catch(IOException ioe) {
-            ioe.printStackTrace();
+        long start = Metrics.start();
+        long written = RevisionStore.store(file);
+        if(written >= 0) {
+            Metrics.record(Metrics.Kind.BACKUP, start, written, -1, getFileName(file));
         }
     }
 }
@@ -0,0 +1,576 @@
+/**
+ * @author Ondřej Doněk <ondrejd@gmail.com>
+ * @link https://github.com/ondrejd/webtools-trans-helper for the canonical source repository
+ * @license https://www.gnu.org/licenses/gpl-3.0.en.html GNU General Public License 3.0
+ */
+
+package com.ondrejd;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Saves edited strings by splicing them into the original file.
+ *
+ * Byte ranges of contents of all <code>string</code> elements are found by
+ * a light scanner (locations reported by StAX are in characters, not
+ * bytes). Everything outside edited ranges - comments, other resources,
+ * formatting, attribute order - is copied through unchanged, so the saved
+ * file differs from the original only in edited strings. Strings with
+ * inline markup are written as XML (if it is well-formed).
+ */
+public class XmlSplicer {
+    private static final byte[] END_TAG = "</string>".getBytes(StandardCharsets.US_ASCII);
+    // Markup is checked without namespaces (prefixes are declared in file)
+    private static final XMLInputFactory markupFactory = XMLInputFactory.newInstance();
+
+    static {
+        markupFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+        markupFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    }
+
+    /**
+     * Byte ranges of contents of <code>string</code> elements (in order of
+     * the file).
+     */
+    public static class Ranges {
+        private final byte[] hash;
+        private final long length;
+        private final String[] names;
+        private final int[] starts;
+        private final int[] ends;
+        private final boolean[] empty;
+
+        private Ranges(byte[] hash, long length, String[] names, int[] starts, int[] ends, boolean[] empty) {
+            this.hash = hash;
+            this.length = length;
+            this.names = names;
+            this.starts = starts;
+            this.ends = ends;
+            this.empty = empty;
+        }
+
+        /**
+         * @return Hash of file content the ranges belong to.
+         */
+        public byte[] getHash() {
+            return hash;
+        }
+
+        /**
+         * @return Count of strings.
+         */
+        public int size() {
+            return names.length;
+        }
+
+    }
+
+    /**
+     * Finds ranges of string contents.
+     * @param in Content of XML file.
+     * @param hash Hash of content.
+     * @return Ranges or NULL if file can't be spliced (e.g. it is not in UTF-8).
+     */
+    static Ranges scan(ByteBuffer in, byte[] hash) {
+        int length = in.limit();
+        String[] names = new String[64];
+        int[] starts = new int[64];
+        int[] ends = new int[64];
+        boolean[] empty = new boolean[64];
+        int count = 0;
+        // Depth of elements inside of the current string element (0 = outside)
+        int depth = 0;
+        String name = null;
+        int contentStart = 0;
+        int pos = 0;
+
+        while((pos = indexOf(in, (byte) '<', pos)) >= 0) {
+            if(startsWith(in, pos, "<!--")) {
+                pos = skipPast(in, pos + 4, "-->");
+            } else if(startsWith(in, pos, "<![CDATA[")) {
+                pos = skipPast(in, pos + 9, "]]>");
+            } else if(startsWith(in, pos, "<?")) {
+                int end = skipPast(in, pos + 2, "?>");
+                if(end < 0 || !isUtf8Declaration(in, pos, end)) {
+                    return null;
+                }
+                pos = end;
+            } else if(startsWith(in, pos, "<!")) {
+                pos = skipDeclaration(in, pos + 2);
+            } else if(startsWith(in, pos, "</")) {
+                int end = indexOf(in, (byte) '>', pos);
+                if(end < 0) {
+                    return null;
+                }
+                if(depth > 0 && --depth == 0) {
+                    // End of string element
+                    if(count == names.length) {
+                        names = Arrays.copyOf(names, count * 2);
+                        starts = Arrays.copyOf(starts, count * 2);
+                        ends = Arrays.copyOf(ends, count * 2);
+                        empty = Arrays.copyOf(empty, count * 2);
+                    }
+                    names[count] = name;
+                    starts[count] = contentStart;
+                    ends[count] = pos;
+                    empty[count] = false;
+                    count++;
+                }
+                pos = end + 1;
+            } else {
+                int end = findTagEnd(in, pos + 1);
+                if(end < 0) {
+                    return null;
+                }
+                boolean selfClosing = in.get(end - 1) == '/';
+                if(depth > 0) {
+                    depth += selfClosing ? 0 : 1;
+                } else if(isStringTag(in, pos + 1)) {
+                    name = getNameAttribute(in, pos + 1, end);
+                    if(name == null) {
+                        name = "";
+                    }
+                    if(selfClosing) {
+                        // Content of <string/> is spliced in place of "/>"
+                        if(count == names.length) {
+                            names = Arrays.copyOf(names, count * 2);
+                            starts = Arrays.copyOf(starts, count * 2);
+                            ends = Arrays.copyOf(ends, count * 2);
+                            empty = Arrays.copyOf(empty, count * 2);
+                        }
+                        names[count] = name;
+                        starts[count] = end - 1;
+                        ends[count] = end + 1;
+                        empty[count] = true;
+                        count++;
+                    } else {
+                        depth = 1;
+                        contentStart = end + 1;
+                    }
+                }
+                pos = end + 1;
+            }
+
+            if(pos <= 0) {
+                return null;
+            }
+        }
+
+        if(depth > 0) {
+            return null;
+        }
+
+        return new Ranges(hash, length, Arrays.copyOf(names, count), Arrays.copyOf(starts, count),
+                Arrays.copyOf(ends, count), Arrays.copyOf(empty, count));
+    }
+
+    /**
+     * Writes original content with modified rows spliced in. Rows are
+     * matched with elements by name (n-th row of a name belongs to n-th
+     * element of that name), so order of rows does not matter.
+     * @param in Original content.
+     * @param ranges Ranges of original content.
+     * @param rows Rows of file (only modified ones are written).
+     * @param out
+     * @return Ranges of written content (without hash, see {@link #withHash})
+     *         or NULL if original content does not match the ranges or some
+     *         modified row has no element (nothing is written then).
+     * @throws IOException
+     */
+    static Ranges splice(ByteBuffer in, Ranges ranges, List<TranslationString> rows, OutputStream out) throws IOException {
+        if(in.limit() != ranges.length) {
+            return null;
+        }
+
+        Map<String, List<TranslationString>> byName = new HashMap<>();
+        int modified = 0;
+        for(TranslationString row : rows) {
+            byName.computeIfAbsent(row.getName(), k -> new ArrayList<>(1)).add(row);
+            modified += row.isModified() ? 1 : 0;
+        }
+        TranslationString[] matched = new TranslationString[ranges.size()];
+        Map<String, Integer> seen = new HashMap<>();
+        for(int i = 0; i < matched.length; i++) {
+            List<TranslationString> named = byName.get(ranges.names[i]);
+            int n = seen.merge(ranges.names[i], 1, Integer::sum) - 1;
+            matched[i] = named != null && n < named.size() ? named.get(n) : null;
+            if(matched[i] != null && matched[i].isModified()) {
+                // Check edited element is where it is supposed to be
+                if(!isValid(in, ranges, i)) {
+                    return null;
+                }
+                modified--;
+            }
+        }
+        if(modified > 0) {
+            return null;
+        }
+
+        int[] starts = ranges.starts.clone();
+        int[] ends = ranges.ends.clone();
+        boolean[] empty = ranges.empty.clone();
+        byte[] buffer = new byte[64 * 1024];
+        int pos = 0;
+        int shift = 0;
+
+        for(int i = 0; i < matched.length; i++) {
+            starts[i] += shift;
+            ends[i] += shift;
+            if(matched[i] == null || !matched[i].isModified()) {
+                continue;
+            }
+
+            byte[] text = getContent(matched[i]).getBytes(StandardCharsets.UTF_8);
+            copy(in, pos, ranges.starts[i], out, buffer);
+            int written;
+            if(ranges.empty[i]) {
+                // "/>" becomes ">text</string>"
+                out.write('>');
+                out.write(text);
+                out.write(END_TAG);
+                written = 1 + text.length + END_TAG.length;
+                starts[i] = ranges.starts[i] + shift + 1;
+                empty[i] = false;
+            } else {
+                out.write(text);
+                written = text.length;
+            }
+            ends[i] = starts[i] + text.length;
+            shift += written - (ranges.ends[i] - ranges.starts[i]);
+            pos = ranges.ends[i];
+        }
+        copy(in, pos, in.limit(), out, buffer);
+
+        return new Ranges(null, ranges.length + shift, ranges.names, starts, ends, empty);
+    }
+
+    /**
+     * @param ranges
+     * @param hash
+     * @return The same ranges belonging to content with another hash.
+     */
+    static Ranges withHash(Ranges ranges, byte[] hash) {
+        return new Ranges(hash, ranges.length, ranges.names, ranges.starts, ranges.ends, ranges.empty);
+    }
+
+    /**
+     * @param row
+     * @return Content of string element for row.
+     */
+    static String getContent(TranslationString row) {
+        String text = row.getText();
+        return row.isMarkup() && isWellFormed(text) ? text : escape(text);
+    }
+
+    /**
+     * @param markup Inner XML of string element.
+     * @return Returns TRUE if markup is well-formed (otherwise it is saved
+     *         as plain text so the file is not broken).
+     */
+    static boolean isWellFormed(String markup) {
+        XMLStreamReader reader = null;
+        try {
+            reader = markupFactory.createXMLStreamReader(new StringReader("<string>" + markup + "</string>"));
+            while(reader.hasNext()) {
+                reader.next();
+            }
+            return true;
+        } catch(XMLStreamException xse) {
+            return false;
+        } finally {
+            if(reader != null) {
+                try {
+                    reader.close();
+                } catch(XMLStreamException xse) {
+                    // Nothing to release
+                }
+            }
+        }
+    }
+
+    /**
+     * @param value
+     * @return Value escaped for XML attribute.
+     */
+    static String escapeAttribute(String value) {
+        return escape(value).replace("\"", "&quot;");
+    }
+
+    /**
+     * @param text
+     * @return Text escaped for XML content.
+     */
+    static String escape(String text) {
+        StringBuilder escaped = null;
+        for(int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            String entity = c == '&' ? "&amp;" : c == '<' ? "&lt;" : c == '>' ? "&gt;" : null;
+            if(entity != null && escaped == null) {
+                escaped = new StringBuilder(text.length() + 16).append(text, 0, i);
+            }
+            if(escaped != null) {
+                if(entity != null) {
+                    escaped.append(entity);
+                } else {
+                    escaped.append(c);
+                }
+            }
+        }
+
+        return escaped == null ? text : escaped.toString();
+    }
+
+    /**
+     * @param in
+     * @param ranges
+     * @param i
+     * @return Returns TRUE if range of element is delimited as expected.
+     */
+    private static boolean isValid(ByteBuffer in, Ranges ranges, int i) {
+        int start = ranges.starts[i];
+        int end = ranges.ends[i];
+        if(ranges.empty[i]) {
+            return end <= in.limit() && in.get(start) == '/' && in.get(start + 1) == '>';
+        }
+
+        return start > 0 && in.get(start - 1) == '>' && startsWith(in, end, "</");
+    }
+
+    /**
+     * @param in
+     * @param from
+     * @param to
+     * @param out
+     * @param buffer
+     * @throws IOException
+     */
+    private static void copy(ByteBuffer in, int from, int to, OutputStream out, byte[] buffer) throws IOException {
+        while(from < to) {
+            int length = Math.min(buffer.length, to - from);
+            for(int i = 0; i < length; i++) {
+                buffer[i] = in.get(from + i);
+            }
+            out.write(buffer, 0, length);
+            from += length;
+        }
+    }
+
+    /**
+     * @param in
+     * @param b
+     * @param from
+     * @return Position of byte or -1.
+     */
+    private static int indexOf(ByteBuffer in, byte b, int from) {
+        for(int i = from; i < in.limit(); i++) {
+            if(in.get(i) == b) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * @param in
+     * @param pos
+     * @param s ASCII string.
+     * @return Returns TRUE if content at position starts with string.
+     */
+    private static boolean startsWith(ByteBuffer in, int pos, String s) {
+        if(pos + s.length() > in.limit()) {
+            return false;
+        }
+
+        for(int i = 0; i < s.length(); i++) {
+            if(in.get(pos + i) != s.charAt(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @param in
+     * @param from
+     * @param end ASCII string.
+     * @return Position after the end string or -1.
+     */
+    private static int skipPast(ByteBuffer in, int from, String end) {
+        for(int i = from; i + end.length() <= in.limit(); i++) {
+            if(startsWith(in, i, end)) {
+                return i + end.length();
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Skips declaration (e.g. DOCTYPE including its internal subset).
+     * @param in
+     * @param from
+     * @return Position after the declaration or -1.
+     */
+    private static int skipDeclaration(ByteBuffer in, int from) {
+        int brackets = 0;
+        for(int i = from; i < in.limit(); i++) {
+            byte b = in.get(i);
+            if(b == '[') {
+                brackets++;
+            } else if(b == ']') {
+                brackets--;
+            } else if(b == '>' && brackets <= 0) {
+                return i + 1;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * @param in
+     * @param from Position after "&lt;".
+     * @return Position of "&gt;" ending the tag (quoted attribute values are skipped) or -1.
+     */
+    private static int findTagEnd(ByteBuffer in, int from) {
+        byte quote = 0;
+        for(int i = from; i < in.limit(); i++) {
+            byte b = in.get(i);
+            if(quote != 0) {
+                if(b == quote) {
+                    quote = 0;
+                }
+            } else if(b == '"' || b == '\'') {
+                quote = b;
+            } else if(b == '>') {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * @param in
+     * @param pos Position after "&lt;".
+     * @return Returns TRUE if tag is <code>string</code> (without prefix).
+     */
+    private static boolean isStringTag(ByteBuffer in, int pos) {
+        if(!startsWith(in, pos, "string") || pos + 6 >= in.limit()) {
+            return false;
+        }
+
+        byte next = in.get(pos + 6);
+        return next == '>' || next == '/' || next == ' ' || next == '\t' || next == '\n' || next == '\r';
+    }
+
+    /**
+     * @param in
+     * @param from Position after "&lt;".
+     * @param to Position of "&gt;".
+     * @return Value of <code>name</code> attribute or NULL.
+     */
+    private static String getNameAttribute(ByteBuffer in, int from, int to) {
+        for(int i = from; i < to; i++) {
+            byte b = in.get(i);
+            if(b == '"' || b == '\'') {
+                // Skip value of another attribute
+                int end = i + 1;
+                while(end < to && in.get(end) != b) {
+                    end++;
+                }
+                i = end;
+                continue;
+            }
+            if(!startsWith(in, i, "name") || !isSpace(in.get(i - 1))) {
+                continue;
+            }
+
+            int j = i + 4;
+            while(j < to && isSpace(in.get(j))) {
+                j++;
+            }
+            if(j >= to || in.get(j) != '=') {
+                continue;
+            }
+            j++;
+            while(j < to && isSpace(in.get(j))) {
+                j++;
+            }
+            if(j >= to || (in.get(j) != '"' && in.get(j) != '\'')) {
+                return null;
+            }
+
+            byte quote = in.get(j);
+            int end = j + 1;
+            while(end < to && in.get(end) != quote) {
+                end++;
+            }
+            byte[] value = new byte[end - j - 1];
+            for(int k = 0; k < value.length; k++) {
+                value[k] = in.get(j + 1 + k);
+            }
+
+            return unescape(new String(value, StandardCharsets.UTF_8));
+        }
+
+        return null;
+    }
+
+    /**
+     * @param b
+     * @return Returns TRUE if byte is XML white space.
+     */
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+    }
+
+    /**
+     * @param value Attribute value.
+     * @return Value with predefined entities replaced.
+     */
+    private static String unescape(String value) {
+        if(value.indexOf('&') < 0) {
+            return value;
+        }
+
+        return value.replace("&lt;", "<").replace("&gt;", ">").replace("&quot;", "\"")
+                .replace("&apos;", "'").replace("&amp;", "&");
+    }
+
+    /**
+     * @param in
+     * @param from Position of "&lt;?".
+     * @param to Position after "?&gt;".
+     * @return Returns TRUE if processing instruction is not XML declaration
+     *         or it declares UTF-8 encoding (or none).
+     */
+    private static boolean isUtf8Declaration(ByteBuffer in, int from, int to) {
+        byte[] bytes = new byte[to - from];
+        for(int i = 0; i < bytes.length; i++) {
+            bytes[i] = in.get(from + i);
+        }
+
+        String declaration = new String(bytes, StandardCharsets.US_ASCII).toLowerCase();
+        if(!declaration.startsWith("<?xml ")) {
+            return true;
+        }
+
+        int encoding = declaration.indexOf("encoding");
+        return encoding < 0 || declaration.indexOf("utf-8", encoding) >= 0;
+    }
+}